@@ -0,0 +1,167 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * A small stand-in for JMH. Each benchmark is warmed up for bench.warmup ms,
+ * then run for bench.iterations rounds of bench.time ms. Throughput is
+ * reported as mean and 99.9% error like JMH's, together with what the gc
+ * profiler would show: bytes allocated per op across all threads, and the
+ * GC count and time during measurement.
+ */
+public class Bench {
+
+    interface Op {
+
+        void run() throws Exception;
+    }
+
+    private static final long warmup = Long.getLong("bench.warmup", 2000);
+    private static final long time = Long.getLong("bench.time", 1000);
+    private static final int iterations = Integer.getInteger("bench.iterations", 5);
+    private static final String filter = System.getProperty("bench.filter", "");
+
+    private static final com.sun.management.ThreadMXBean threads
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    /*
+     * Student's t at 0.9995, the 99.9% two-sided quantile, for 1 to 30
+     * degrees of freedom, then for 40, 60 and 120; beyond 1000 the normal
+     * quantile is close enough.
+     */
+    private static final double T_9995[] = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+        4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+        3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+    private static final int T_DF[] = {40, 60, 120};
+    private static final double T_9995_DF[] = {3.551, 3.460, 3.373};
+    private static final double Z_9995 = 3.291;
+
+    private static boolean headerPrinted = false;
+
+    public static boolean selected(String name) {
+        return name.contains(filter);
+    }
+
+    public static void measure(String name, String param, Op op) throws Exception {
+
+        if (!selected(name)) {
+            return;
+        }
+
+        long end = System.nanoTime() + warmup * 1000000;
+        while (System.nanoTime() < end) {
+            op.run();
+        }
+
+        double score[] = new double[iterations];
+        long ops = 0, bytes = 0, gcCount = 0, gcTime = 0;
+
+        for (int it = 0; it < iterations; it++) {
+            long allocated = allocatedBytes(), count = gcCount(), spent = gcTime();
+            long n = 0, start = System.nanoTime();
+            end = start + time * 1000000;
+            long now;
+            do {
+                op.run();
+                n++;
+                now = System.nanoTime();
+            } while (now < end);
+
+            score[it] = n / ((now - start) / 1e9);
+            ops += n;
+            bytes += allocatedBytes() - allocated;
+            gcCount += gcCount() - count;
+            gcTime += gcTime() - spent;
+        }
+
+        double mean = Arrays.stream(score).average().orElse(0);
+        double sd = Math.sqrt(Arrays.stream(score).map(s -> (s - mean) * (s - mean)).sum() / Math.max(1, iterations - 1));
+        double error = iterations > 1 ? t9995(iterations - 1) * sd / Math.sqrt(iterations) : Double.NaN;
+
+        if (!headerPrinted) {
+            System.out.println(String.format("%-36s %-10s %4s %14s %12s %-7s %14s %8s %8s",
+                    "Benchmark", "Param", "Cnt", "Score", "Error", "Units", "alloc B/op", "gc.count", "gc.ms"));
+            headerPrinted = true;
+        }
+        System.out.println(String.format("%-36s %-10s %4d %14.3f %12.3f %-7s %14.0f %8d %8d",
+                name, param, iterations, mean, error, "ops/s", (double) bytes / ops, gcCount, gcTime));
+    }
+
+    /*
+     * t(0.9995) for df degrees of freedom, rounded towards fewer degrees of
+     * freedom between the tabulated ones so the error is never understated.
+     */
+    static double t9995(int df) {
+        if (df <= T_9995.length) {
+            return T_9995[df - 1];
+        }
+        if (df >= 1000) {
+            return Z_9995;
+        }
+        double t = T_9995[T_9995.length - 1];
+        for (int i = 0; i < T_DF.length && T_DF[i] <= df; i++) {
+            t = T_9995_DF[i];
+        }
+        return t;
+    }
+
+    private static long allocatedBytes() {
+        long ids[] = threads.getAllThreadIds();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(ids)) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static long gcCount() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private static long gcTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : collectors) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+
+        List<String> suites = new ArrayList<>(Arrays.asList(args));
+        if (suites.isEmpty()) {
+            suites.addAll(Arrays.asList("platform", "sunuwar", "wekaml"));
+        }
+
+        try {
+            for (String suite : suites) {
+                switch (suite) {
+                    case "platform":
+                        PlatformBench.run();
+                        break;
+                    case "sunuwar":
+                        SunuwarBench.run();
+                        break;
+                    case "wekaml":
+                        WekaMLBench.run();
+                        break;
+                    case "macro":
+                        MacroBench.run();
+                        break;
+                    default:
+                        throw new Exception("no benchmark suite " + suite);
+                }
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/*
+ * gmc_test's decision loop end to end: predict, write the platform and
+ * deployment, simulate, update the history, over LabSetup.WORKLOAD. Unless
+ * simgrid.simulator is set, bench/stub_simulator.sh stands in for
+ * application_lab, with SIMGRID_STUB_LATENCY seconds of simulated run time
+ * from its environment. Reports decisions per second and the p50/p95/p99 of
+ * every phase and of whole decisions. With bench.macro.pipeline=true the
+ * decisions go through DecisionPipeline instead, and the phases are those
+ * Metrics timed. The result cache is off, so every decision runs the
+ * simulator, unless simgrid.cache says otherwise; the summary line says
+ * which.
+ */
+public class MacroBench {
+
+    private static final int MACHINES = 3000;
+
+    public static void run() throws Exception {
+
+        if (!Bench.selected("macro")) {
+            return;
+        }
+
+        if (System.getProperty("simgrid.simulator") == null) {
+            System.setProperty("simgrid.simulator", new File("bench/stub_simulator.sh").getAbsolutePath());
+        }
+        if (System.getProperty("simgrid.cache") == null) {
+            System.setProperty("simgrid.cache", "false");
+        }
+        String cache = ResultCache.enabled() ? "result cache on" : "result cache off";
+        int rounds = Integer.getInteger("bench.macro.rounds", 1);
+        int decisions = Integer.getInteger("bench.macro.decisions", LabSetup.WORKLOAD.length);
+        decisions = Math.min(decisions, LabSetup.WORKLOAD.length);
+
+        File dir = Files.createTempDirectory("macro").toFile();
+        SimGridJava sim = new SimGridJava("gmc_test", false);
+        WekaML gmc = new WekaML(MACHINES, "eptp", TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), null));
+        try {
+            int n = rounds * decisions;
+            if (Boolean.getBoolean("bench.macro.pipeline")) {
+                int schedule[] = new int[n];
+                for (int i = 0; i < n; i++) {
+                    schedule[i] = i % decisions;
+                }
+                long start = System.nanoTime();
+                new DecisionPipeline(sim, gmc, dir).run(schedule, new PrintStream(new ByteArrayOutputStream()));
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                System.out.print(Metrics.snapshot());
+                System.out.printf("%.3f decisions/s over %d decisions, pipelined, %s%n", n / seconds, n, cache);
+                return;
+            }
+
+            long phases[] = new long[SimGridJava.PHASES.length];
+            long samples[][] = new long[phases.length + 1][n];
+
+            long start = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                sim.decide(gmc, i % decisions, dir, phases, null);
+                long total = 0;
+                for (int p = 0; p < phases.length; p++) {
+                    samples[p][i] = phases[p];
+                    total += phases[p];
+                }
+                samples[phases.length][i] = total;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%-12s %8s %10s %10s %10s %10s%n", "macro", "n", "mean ms", "p50 ms", "p95 ms", "p99 ms");
+            for (int p = 0; p <= phases.length; p++) {
+                String name = p < phases.length ? SimGridJava.PHASES[p] : "decision";
+                report(name, samples[p]);
+            }
+            System.out.printf("%.3f decisions/s over %d decisions, %s%n", n / seconds, n, cache);
+        } finally {
+            gmc.close();
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    private static void report(String name, long samples[]) {
+        long sorted[] = samples.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for (long s : sorted) {
+            sum += s;
+        }
+        System.out.printf("%-12s %8d %10.3f %10.3f %10.3f %10.3f%n", name, sorted.length, sum / sorted.length / 1e6,
+                percentile(sorted, 50) / 1e6, percentile(sorted, 95) / 1e6, percentile(sorted, 99) / 1e6);
+    }
+
+    /*
+     * Nearest rank on sorted samples.
+     */
+    private static long percentile(long sorted[], double p) {
+        int rank = (int) Math.ceil(p / 100 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)];
+    }
+}
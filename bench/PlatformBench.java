@@ -0,0 +1,54 @@
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+
+/*
+ * editPlatformFile goes through PlatformWriter: a full rewrite, the one-host
+ * step a gmc_train sweep takes between runs, and the compact layout. Hosts
+ * beyond the 3000 in LabSetup repeat its groups.
+ */
+public class PlatformBench {
+
+    private static final int HOSTS[] = {100, 3000, 100000};
+
+    public static void run() throws Exception {
+
+        File dir = Files.createTempDirectory("platform-bench").toFile();
+        try {
+            for (int hosts : HOSTS) {
+                PlatformWriter writer = writer(hosts);
+
+                File a = new File(dir, "a.xml"), b = new File(dir, "b.xml");
+                boolean flip[] = {false};
+                Bench.measure("platform.write.full", "" + hosts, () -> {
+                    flip[0] = !flip[0];
+                    writer.write(flip[0] ? a : b, hosts);
+                });
+
+                File step = new File(dir, "step.xml");
+                Bench.measure("platform.write.step", "" + hosts, () -> {
+                    flip[0] = !flip[0];
+                    writer.write(step, flip[0] ? hosts : hosts - 1);
+                });
+
+                File compact = new File(dir, "compact.xml");
+                Bench.measure("platform.writeCompact", "" + hosts, () -> writer.writeCompact(compact, hosts));
+            }
+        } finally {
+            FileUtils.deleteQuietly(dir);
+        }
+    }
+
+    static PlatformWriter writer(int hosts) {
+
+        HostCatalog speeds = new HostCatalog(hosts);
+        int order[] = new int[hosts];
+        for (int i = 0; i < hosts; i++) {
+            int g = (i / LabSetup.SERVER_GROUP[0].length) % LabSetup.FLOPS.length;
+            int j = i % LabSetup.SERVER_GROUP[g].length;
+            speeds.put(i + 1, 1.0, LabSetup.FLOPS[g], LabSetup1.ALPHAS[g][j], LabSetup1.ALPHAS[g][j] + LabSetup1.BETAS[g][j]);
+            order[i] = i + 1;
+        }
+        return new PlatformWriter(speeds, order, false);
+    }
+}
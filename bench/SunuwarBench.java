@@ -0,0 +1,46 @@
+import java.util.Random;
+
+/*
+ * SunuwarUNL on generated clusters of 3 to 50 groups, 100 servers each, at
+ * half load: building the solver, which runs findGroupUtilization once, and
+ * resolve between two close arrival rates.
+ */
+public class SunuwarBench {
+
+    private static final int GROUPS[] = {3, 10, 25, 50};
+    private static final int SERVERS = 100;
+
+    public static void run() throws Exception {
+
+        for (int groups : GROUPS) {
+            Random random = new Random(groups);
+            double flops[] = new double[groups];
+            int serverGroup[][] = new int[groups][SERVERS];
+            double alphas[][] = new double[groups][SERVERS];
+            double betas[][] = new double[groups][SERVERS];
+
+            double low = 0, high = 0;
+            int id = 1;
+            for (int i = 0; i < groups; i++) {
+                flops[i] = LabSetup.FLOPS[i % LabSetup.FLOPS.length];
+                for (int j = 0; j < SERVERS; j++) {
+                    serverGroup[i][j] = id++;
+                    alphas[i][j] = LabSetup1.ALPHAS[i % LabSetup1.ALPHAS.length][random.nextInt(LabSetup1.ALPHAS[0].length)];
+                    betas[i][j] = LabSetup1.BETAS[i % LabSetup1.BETAS.length][random.nextInt(LabSetup1.BETAS[0].length)];
+                }
+                low += flops[i] / 10 * SERVERS * 30;
+                high += flops[i] / 10 * SERVERS * 100;
+            }
+            double rate = (low + high) / 2;
+
+            Bench.measure("sunuwar.construct", "" + groups, () -> new SunuwarUNL(flops, serverGroup, alphas, betas, rate));
+
+            SunuwarUNL solver = new SunuwarUNL(flops, serverGroup, alphas, betas, rate);
+            boolean flip[] = {false};
+            Bench.measure("sunuwar.resolve", "" + groups, () -> {
+                flip[0] = !flip[0];
+                solver.resolve(flip[0] ? rate * 1.01 : rate);
+            });
+        }
+    }
+}
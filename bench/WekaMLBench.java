@@ -0,0 +1,90 @@
+import java.io.File;
+
+/*
+ * WekaML's per-decision path with models trained on trainingData.csv, over
+ * every candidate machine count for one workload. predictLabel and
+ * calculateTotalEnergy overwrite their columns of the candidate table, so
+ * each op can be repeated on the table one evaluate left.
+ */
+public class WekaMLBench {
+
+    private static final int MACHINES = 3000;
+    private static final double WORKLOAD = 20000 * 128;
+
+    public static void run() throws Exception {
+
+        if (!Bench.selected("wekaml")) {
+            return;
+        }
+
+        WekaML gmc = new WekaML(MACHINES, "eptp", TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), null));
+        try {
+            gmc.runWekaML(WORKLOAD);
+
+            int machines[] = new int[MACHINES - 1];
+            for (int i = 0; i < machines.length; i++) {
+                machines[i] = i + 2;
+            }
+
+            Bench.measure("wekaml.evaluate", "" + machines.length, () -> gmc.evaluate(WORKLOAD, machines));
+
+            String names[] = {"rt", "cpu", "ac"};
+            int outputs[] = {CandidateTable.RT, CandidateTable.CPU_POWER, CandidateTable.AC_POWER};
+            CandidateTable table = gmc.getTable();
+            gmc.evaluate(WORKLOAD, machines);
+            for (int k = 0; k < names.length; k++) {
+                TrainedModel model = gmc.getModel(k);
+                int output = outputs[k];
+
+                Bench.measure("wekaml.generateTestSet." + names[k], "" + machines.length, () -> gmc.generateTestSet(table, model.getData()));
+                Bench.measure("wekaml.predictLabel." + names[k], "" + machines.length, () -> gmc.predictLabel(table, model.getData(), model, output));
+            }
+
+            Bench.measure("wekaml.calculateTotalEnergy", "" + machines.length, () -> gmc.calculateTotalEnergy(table));
+
+            knn(machines);
+        } finally {
+            gmc.close();
+        }
+    }
+
+    /*
+     * The response time and CPU power models again on the kNN backend,
+     * predictLabel timed. KnnCheck holds its predictions to IBk's.
+     */
+    private static void knn(int machines[]) throws Exception {
+
+        if (!Bench.selected("wekaml.knn")) {
+            return;
+        }
+
+        String backend = System.setProperty("wekaml.backend", "knn");
+        WekaML knn;
+        try {
+            knn = new WekaML(MACHINES, "eptp", TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), null));
+        } finally {
+            if (backend == null) {
+                System.clearProperty("wekaml.backend");
+            } else {
+                System.setProperty("wekaml.backend", backend);
+            }
+        }
+
+        try {
+            knn.runWekaML(WORKLOAD);
+
+            String names[] = {"rt", "cpu"};
+            int outputs[] = {CandidateTable.RT, CandidateTable.CPU_POWER};
+            CandidateTable table = knn.getTable();
+            knn.evaluate(WORKLOAD, machines);
+            for (int k = 0; k < names.length; k++) {
+                TrainedModel model = knn.getModel(k);
+                int output = outputs[k];
+
+                Bench.measure("wekaml.knn.predictLabel." + names[k], "" + machines.length, () -> knn.predictLabel(table, model.getData(), model, output));
+            }
+        } finally {
+            knn.close();
+        }
+    }
+}
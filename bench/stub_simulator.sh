@@ -0,0 +1,23 @@
+#!/bin/sh
+# Stand-in for application_lab when benchmarking the decision loop. Reads
+# platform_lab.xml and deployment_lab.xml from the working directory, waits
+# SIMGRID_STUB_LATENCY seconds (default 0) and prints a synthetic
+# workload,machines,cpuEnergy,acEnergy,time line: tasks run in waves of one
+# per worker, busy workers draw 95 W and idle ones 5 W over a 500 W base.
+# Only the expanded platform layout is understood, not simgrid.platform=compact.
+
+hosts=$(grep -c '<host ' platform_lab.xml)
+tasks=$(sed -n 's/.*<argument value="\([0-9.]*\)"\/>.*/\1/p' deployment_lab.xml | head -n 1)
+size=$(sed -n 's/.*<argument value="\([0-9.]*\)e6"\/>.*/\1/p' deployment_lab.xml | head -n 1)
+
+sleep "${SIMGRID_STUB_LATENCY:-0}"
+
+awk -v hosts="$hosts" -v tasks="$tasks" -v size="$size" 'BEGIN {
+    m = hosts - 1
+    if (m < 1) m = 1
+    waves = int((tasks + m - 1) / m)
+    busy = tasks < m ? tasks : m
+    time = waves * 12.8 + 0.001 * m
+    cpu = time * (500 + 95 * busy + 5 * (m - busy))
+    printf "%s,%d,%.4f,%.4f,%.4f\n", size, m, cpu, 0.6 * cpu, time
+}'
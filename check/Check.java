@@ -0,0 +1,51 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Checks that hold the optimizations in src/ to what they replace, for a
+ * tree without unit tests. Each suite compares a fast path with its slow
+ * reference and counts every disagreement; main exits with status 1 if
+ * there was any, so "ant check" fails.
+ */
+public class Check {
+
+    private static int checks = 0, failures = 0;
+
+    public static void expect(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+
+    public static void main(String[] args) {
+
+        List<String> suites = new ArrayList<>(Arrays.asList(args));
+        if (suites.isEmpty()) {
+            suites.addAll(Arrays.asList("search", "knn"));
+        }
+
+        try {
+            for (String suite : suites) {
+                switch (suite) {
+                    case "search":
+                        SearchCheck.run();
+                        break;
+                    case "knn":
+                        KnnCheck.run();
+                        break;
+                    default:
+                        throw new Exception("no check suite " + suite);
+                }
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+            System.exit(1);
+        }
+
+        System.out.println(checks + " checks, " + failures + " failed");
+        System.exit(failures > 0 ? 1 : 0);
+    }
+}
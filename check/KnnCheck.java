@@ -0,0 +1,82 @@
+import java.io.File;
+
+/*
+ * The kNN backend predicts what IBk predicts, to within TOLERANCE relative,
+ * for the response time and CPU power models trained on trainingData.csv:
+ * over the workloads and machine counts it covers, halfway between its
+ * workloads, where neighbours tie on distance, and outside its ranges. IBk
+ * widens its ranges with every query, so queries outside them go one at a
+ * time, each to IBk as freshly trained.
+ */
+public class KnnCheck {
+
+    private static final int MACHINES = 3000;
+    private static final double TOLERANCE = 1e-9;
+    private static final String NAMES[] = {"rt", "cpu"};
+    private static final int OUTPUTS[] = {CandidateTable.RT, CandidateTable.CPU_POWER};
+
+    public static void run() throws Exception {
+
+        WekaML ibk = open(null);
+        try {
+            WekaML knn = open("knn");
+            try {
+                int covered[] = CandidateSearch.range(2, 210);
+                for (double workload : new double[]{640, 960, 1280, 3840, 6400, 9600, 12800, 38400, 64000}) {
+                    compare(ibk, knn, workload, covered);
+                }
+
+                for (double workload : new double[]{320, 6400, 128000}) {
+                    for (int m : new int[]{2, 211, 1500, 3000}) {
+                        compare(ibk, knn, workload, new int[]{m});
+                    }
+                }
+            } finally {
+                knn.close();
+            }
+        } finally {
+            ibk.close();
+        }
+    }
+
+    private static void compare(WekaML ibk, WekaML knn, double workload, int machines[]) throws Exception {
+
+        ibk.train(); //fresh copies, their ranges not yet widened
+        ibk.evaluate(workload, machines);
+        knn.train();
+        knn.evaluate(workload, machines);
+
+        for (int k = 0; k < NAMES.length; k++) {
+            double worst = 0;
+            int at = machines[0];
+            for (int i = 0; i < machines.length; i++) {
+                double expected = ibk.getTable().get(i, OUTPUTS[k]), actual = knn.getTable().get(i, OUTPUTS[k]);
+                double diff = Math.abs(expected - actual) / Math.max(Math.abs(expected), 1e-9);
+                if (!(diff <= worst)) {
+                    worst = diff;
+                    at = machines[i];
+                }
+            }
+            Check.expect(worst <= TOLERANCE, String.format("knn %s, workload %.0f, %d to %d machines: relative difference from IBk %.3g at %d machines",
+                    NAMES[k], workload, machines[0], machines[machines.length - 1], worst, at));
+        }
+    }
+
+    /*
+     * WekaML on trainingData.csv with wekaml.backend set to backend while it
+     * is built.
+     */
+    private static WekaML open(String backend) throws Exception {
+
+        String old = backend == null ? System.clearProperty("wekaml.backend") : System.setProperty("wekaml.backend", backend);
+        try {
+            return new WekaML(MACHINES, "eptp", TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), null));
+        } finally {
+            if (old == null) {
+                System.clearProperty("wekaml.backend");
+            } else {
+                System.setProperty("wekaml.backend", old);
+            }
+        }
+    }
+}
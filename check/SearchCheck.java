@@ -0,0 +1,49 @@
+import java.io.File;
+import java.util.Arrays;
+
+/*
+ * Every candidate search picks the machine count the exhaustive search
+ * picks, for the workloads of trainingData.csv on a cluster of its size and
+ * on the default 3,000 machines, under each scoring method. The scores are
+ * predicted once per workload and shared, so every search sees the same
+ * objective.
+ */
+public class SearchCheck {
+
+    private static final int CLUSTERS[] = {210, 3000};
+    private static final double WORKLOADS[] = {640, 1280, 6400, 12800, 64000};
+    private static final String METHODS[] = {"eptp", "cpu", "cool"};
+    private static final String SEARCHES[] = {"coarse", "golden", "bnb"};
+
+    public static void run() throws Exception {
+
+        for (int cluster : CLUSTERS) {
+            for (String method : METHODS) {
+                WekaML gmc = new WekaML(cluster, method, TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), null));
+                try {
+                    gmc.train();
+                    int machines[] = CandidateSearch.range(2, cluster);
+                    for (double workload : WORKLOADS) {
+                        double scores[] = Arrays.copyOf(gmc.evaluate(workload, machines), machines.length);
+                        CandidateSearch.Objective objective = m -> {
+                            double result[] = new double[m.length];
+                            for (int i = 0; i < m.length; i++) {
+                                result[i] = scores[m[i] - 2];
+                            }
+                            return result;
+                        };
+
+                        int optimum = new ExhaustiveSearch().search(objective, 2, cluster);
+                        for (String name : SEARCHES) {
+                            int found = CandidateSearch.forName(name).search(objective, 2, cluster);
+                            Check.expect(found == optimum, String.format("search %s, %d machines, %s, workload %.0f: chose %d (%g), exhaustive %d (%g)",
+                                    name, cluster, method, workload, found, scores[found - 2], optimum, scores[optimum - 2]));
+                        }
+                    }
+                } finally {
+                    gmc.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Training data for WekaML from a fraction of gmc_train's sweep. Every
+ * workload starts with a geometric grid of machine counts. After that each
+ * round rebuilds the models on everything simulated so far, scores the
+ * midpoint of every gap between simulated machine counts and simulates the
+ * best of them. A gap scores by how far the models' total energy at its
+ * midpoint is from the straight line between its ends, plus how much the
+ * simulated energy changes across it, both relative, times the log of its
+ * width. Sampling stops once a round's predictions are within targetError of
+ * what the simulator said, the budget is spent or no gap is left.
+ */
+public class AdaptiveSampler {
+
+    /*
+     * Simulates tasks[workload[i]] on machines[i] for every i.
+     */
+    public interface Batch {
+
+        SimulationResult[] simulate(int workload[], int machines[]) throws Exception;
+    }
+
+    private final WekaML gmc;
+    private final int numOfMachines;
+    private final int tasks[];
+    private final int mapSizeMB;
+    private final double thresTemp;
+    private final double envTemp;
+
+    private final int gridPoints = Integer.getInteger("simgrid.adaptive.grid", 9);
+    private final int batchSize = Integer.getInteger("simgrid.adaptive.batch", 16);
+    private final double targetError = Double.parseDouble(System.getProperty("simgrid.adaptive.error", "0.05"));
+    private final int budget;
+
+    private final List<TreeMap<Integer, Double>> energy = new ArrayList<>(); //simulated total energy by machine count, per workload
+
+    public AdaptiveSampler(WekaML gmc, int numOfMachines, int tasks[], int mapSizeMB, double thresTemp, double envTemp) {
+        this.gmc = gmc;
+        this.numOfMachines = numOfMachines;
+        this.tasks = tasks;
+        this.mapSizeMB = mapSizeMB;
+        this.thresTemp = thresTemp;
+        this.envTemp = envTemp;
+        budget = Integer.getInteger("simgrid.adaptive.budget", tasks.length * (numOfMachines - 1) / 10);
+
+        for (int w = 0; w < tasks.length; w++) {
+            energy.add(new TreeMap<>());
+        }
+    }
+
+    /*
+     * Returns the number of simulations run.
+     */
+    public int run(Batch batch) throws Exception {
+
+        ArrayList<Gap> next = new ArrayList<>();
+        for (int w = 0; w < tasks.length; w++) {
+            for (int m : grid()) {
+                next.add(new Gap(w, m, 0, Double.NaN));
+            }
+        }
+
+        int sims = 0;
+        for (int round = 0; !next.isEmpty(); round++) {
+
+            int workload[] = new int[next.size()];
+            int machines[] = new int[next.size()];
+            for (int i = 0; i < workload.length; i++) {
+                workload[i] = next.get(i).w;
+                machines[i] = next.get(i).m;
+            }
+
+            SimulationResult results[] = batch.simulate(workload, machines);
+            sims += results.length;
+
+            double error = 0;
+            int scored = 0;
+            for (int i = 0; i < results.length; i++) {
+                gmc.updateHistory(results[i], thresTemp, envTemp);
+                double actual = totalEnergy(results[i]);
+                energy.get(workload[i]).put(machines[i], actual);
+
+                double predicted = next.get(i).predicted;
+                if (!Double.isNaN(predicted)) {
+                    error += Math.abs(predicted - actual) / Math.max(Math.abs(actual), 1e-9);
+                    scored++;
+                }
+            }
+            error = scored > 0 ? error / scored : Double.NaN;
+            System.err.println("adaptive round " + round + ": " + sims + " simulations, mean relative error " + error);
+
+            if ((scored > 0 && error <= targetError) || sims >= budget) {
+                break;
+            }
+
+            gmc.retrain();
+            next = choose(Math.min(batchSize, budget - sims));
+        }
+
+        return sims;
+    }
+
+    /*
+     * Roughly gridPoints machine counts from 2 to numOfMachines, evenly
+     * spaced on a log scale since energy changes fastest at few machines.
+     */
+    int[] grid() {
+        TreeMap<Integer, Boolean> points = new TreeMap<>();
+        double ratio = Math.log(numOfMachines / 2.0);
+        for (int k = 0; k < gridPoints; k++) {
+            double f = gridPoints > 1 ? (double) k / (gridPoints - 1) : 1;
+            points.put((int) Math.round(2 * Math.exp(ratio * f)), true);
+        }
+        return points.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private ArrayList<Gap> choose(int n) throws Exception {
+
+        ArrayList<Gap> gaps = new ArrayList<>();
+        for (int w = 0; w < tasks.length; w++) {
+
+            ArrayList<int[]> ends = new ArrayList<>();
+            Map.Entry<Integer, Double> prev = null;
+            for (Map.Entry<Integer, Double> e : energy.get(w).entrySet()) {
+                if (prev != null && e.getKey() - prev.getKey() >= 2) {
+                    ends.add(new int[]{prev.getKey(), e.getKey()});
+                }
+                prev = e;
+            }
+            if (ends.isEmpty()) {
+                continue;
+            }
+
+            int mids[] = new int[ends.size()];
+            for (int i = 0; i < mids.length; i++) {
+                mids[i] = (ends.get(i)[0] + ends.get(i)[1]) >>> 1;
+            }
+
+            gmc.evaluate((double) tasks[w] * mapSizeMB, mids);
+            CandidateTable table = gmc.getTable();
+
+            for (int i = 0; i < mids.length; i++) {
+                int a = ends.get(i)[0], b = ends.get(i)[1];
+                double ea = energy.get(w).get(a), eb = energy.get(w).get(b);
+                double line = ea + (eb - ea) * (mids[i] - a) / (b - a);
+                double predicted = table.total[i];
+
+                double disagreement = Math.abs(predicted - line) / Math.max(Math.abs(line), 1e-9);
+                double change = Math.abs(eb - ea) / Math.max(Math.min(Math.abs(ea), Math.abs(eb)), 1e-9);
+                gaps.add(new Gap(w, mids[i], (disagreement + change) * Math.log(b - a), predicted));
+            }
+        }
+
+        gaps.sort((x, y) -> Double.compare(y.score, x.score));
+        return new ArrayList<>(gaps.subList(0, Math.min(n, gaps.size())));
+    }
+
+    /*
+     * The same total WekaML predicts: CPU plus cooling power over the run,
+     * idle machines included.
+     */
+    private double totalEnergy(SimulationResult result) {
+        double row[] = result.toTrainingRow(numOfMachines - 1, thresTemp, envTemp);
+        return (row[3] + row[6]) * row[2];
+    }
+
+    private static class Gap {
+
+        private final int w;
+        private final int m;
+        private final double score;
+        private final double predicted;
+
+        private Gap(int w, int m, double score, double predicted) {
+            this.w = w;
+            this.m = m;
+            this.score = score;
+            this.predicted = predicted;
+        }
+    }
+}
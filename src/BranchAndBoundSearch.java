@@ -0,0 +1,105 @@
+import java.util.PriorityQueue;
+
+/*
+ * Lipschitz branch and bound: every interval between two scored machine
+ * counts gets the lower bound (f(a) + f(b) - L * (b - a)) / 2, with L the
+ * steepest slope seen so far. Intervals are split at the midpoint, most
+ * promising first, until no bound beats the best score or the budget of
+ * scored candidates is spent.
+ */
+public class BranchAndBoundSearch implements CandidateSearch {
+
+    private static final int BATCH = 8;
+    private static final double SAFETY = 1.5;
+
+    private final int gridSize;
+    private final int budget;
+
+    public BranchAndBoundSearch(int gridSize, int budget) {
+        this.gridSize = Math.max(2, gridSize);
+        this.budget = Math.max(this.gridSize, budget);
+    }
+
+    @Override
+    public int search(Objective objective, int lo, int hi) throws Exception {
+
+        int step = Math.max(1, (int) Math.ceil((hi - lo) / (double) (gridSize - 1)));
+        int size = (hi - lo + step - 1) / step + 1;
+        int machines[] = new int[size];
+        for (int i = 0; i < size; i++) {
+            machines[i] = Math.min(hi, lo + i * step);
+        }
+        double scores[] = CandidateSearch.evaluate(objective, machines);
+        int spent = size;
+
+        int best = CandidateSearch.best(machines, scores);
+        int bestM = machines[best];
+        double bestScore = scores[best];
+
+        double slope = 0;
+        for (int i = 1; i < size; i++) {
+            slope = steeper(slope, Math.abs(scores[i] - scores[i - 1]) / Math.max(1, machines[i] - machines[i - 1]));
+        }
+
+        PriorityQueue<double[]> open = new PriorityQueue<>((x, y) -> Double.compare(x[0], y[0]));
+        for (int i = 1; i < size; i++) {
+            if (machines[i] - machines[i - 1] > 1) {
+                open.add(new double[]{0, machines[i - 1], scores[i - 1], machines[i], scores[i]});
+            }
+        }
+
+        while (!open.isEmpty() && spent < budget) {
+
+            PriorityQueue<double[]> bounded = new PriorityQueue<>(open.comparator());
+            for (double interval[] : open) {
+                interval[0] = (interval[2] + interval[4] - SAFETY * slope * (interval[3] - interval[1])) / 2;
+                bounded.add(interval);
+            }
+            open = bounded;
+
+            if (open.peek()[0] >= bestScore) {
+                break;
+            }
+
+            int n = Math.min(BATCH, Math.min(open.size(), budget - spent));
+            double split[][] = new double[n][];
+            int mids[] = new int[n];
+            for (int k = 0; k < n; k++) {
+                split[k] = open.poll();
+                mids[k] = (int) ((split[k][1] + split[k][3]) / 2);
+            }
+
+            double midScores[] = CandidateSearch.evaluate(objective, mids);
+            spent += n;
+
+            for (int k = 0; k < n; k++) {
+                double a = split[k][1], fa = split[k][2], b = split[k][3], fb = split[k][4];
+                int m = mids[k];
+                double fm = midScores[k];
+
+                if (fm < bestScore || fm == bestScore && m < bestM) {
+                    bestM = m;
+                    bestScore = fm;
+                }
+
+                slope = steeper(steeper(slope, Math.abs(fm - fa) / (m - a)), Math.abs(fb - fm) / (b - m));
+
+                if (m - a > 1) {
+                    open.add(new double[]{0, a, fa, m, fm});
+                }
+                if (b - m > 1) {
+                    open.add(new double[]{0, m, fm, b, fb});
+                }
+            }
+        }
+
+        return bestM;
+    }
+
+    /*
+     * The steeper slope, leaving out any to or from an unscored candidate.
+     */
+    private static double steeper(double slope, double other) {
+        return Double.isInfinite(other) || Double.isNaN(other) ? slope : Math.max(slope, other);
+    }
+}
@@ -0,0 +1,81 @@
+public interface CandidateSearch {
+
+    interface Objective {
+
+        /*
+         * Scores for the given machine counts, lower is better. Counts already
+         * scored in the same decision are not predicted again.
+         */
+        double[] evaluate(int machines[]) throws Exception;
+    }
+
+    /*
+     * The machine count in [lo, hi] with the lowest score found; ties go to
+     * the smaller count and a candidate scored NaN only wins if none is
+     * scored.
+     */
+    int search(Objective objective, int lo, int hi) throws Exception;
+
+    static CandidateSearch forName(String name) throws Exception {
+
+        CandidateSearch search;
+        switch (name) {
+            case "exhaustive":
+                search = new ExhaustiveSearch();
+                break;
+            case "coarse":
+                search = new CoarseToFineSearch(Integer.getInteger("wekaml.search.grid", 32), Integer.getInteger("wekaml.search.regions", 3));
+                break;
+            case "golden":
+                search = new GoldenSectionSearch(Integer.getInteger("wekaml.search.grid", 32), Integer.getInteger("wekaml.search.regions", 3),
+                        Integer.getInteger("wekaml.search.window", 2));
+                break;
+            case "bnb":
+                search = new BranchAndBoundSearch(Integer.getInteger("wekaml.search.grid", 32), Integer.getInteger("wekaml.search.budget", 512));
+                break;
+            default:
+                throw new Exception("unknown candidate search " + name);
+        }
+
+        return Boolean.getBoolean("wekaml.search.validate") ? new ValidatingSearch(search) : search;
+    }
+
+    /*
+     * objective's scores for machines with NaN, a candidate the models could
+     * not score, as +Infinity.
+     */
+    static double[] evaluate(Objective objective, int machines[]) throws Exception {
+        double scores[] = objective.evaluate(machines);
+        for (int i = 0; i < machines.length; i++) {
+            if (Double.isNaN(scores[i])) {
+                scores = scores.clone();
+                for (int j = i; j < machines.length; j++) {
+                    if (Double.isNaN(scores[j])) {
+                        scores[j] = Double.POSITIVE_INFINITY;
+                    }
+                }
+                break;
+            }
+        }
+        return scores;
+    }
+
+    static int best(int machines[], double scores[]) {
+        int best = 0;
+        for (int i = 1; i < machines.length; i++) {
+            if (Double.isNaN(scores[best]) && !Double.isNaN(scores[i])
+                    || scores[i] < scores[best] || scores[i] == scores[best] && machines[i] < machines[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    static int[] range(int from, int to) {
+        int machines[] = new int[Math.max(0, to - from + 1)];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = from + i;
+        }
+        return machines;
+    }
+}
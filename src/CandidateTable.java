@@ -0,0 +1,100 @@
+import java.util.Arrays;
+
+/*
+ * The candidates of one decision, a machine count each, column by column:
+ * what WekaML predicts and derives for them goes into the column of that
+ * name, row i of every column being candidate i. The columns are allocated
+ * once for the most candidates a decision can have and reused, so a decision
+ * boxes nothing and allocates nothing per candidate.
+ */
+public class CandidateTable {
+
+    public static final String COLUMNS[] = {"WorkLoad", "NumOfMachines", "ResponseTime", "CPUPower", "CPUEnergy",
+        "ThresTemp", "EnvTemp", "ACPower", "ACEnergy", "TotalEnergy"};
+    public static final int WORKLOAD = 0, MACHINES = 1, RT = 2, CPU_POWER = 3, CPU_ENERGY = 4,
+            THRES_TEMP = 5, ENV_TEMP = 6, AC_POWER = 7, AC_ENERGY = 8, TOTAL_ENERGY = 9;
+
+    private final double columns[][];
+    public final double w[], m[], rt[], cpuP[], cpuE[], thres[], env[], acP[], acE[], total[];
+    public final double score[]; //what the decision minimizes, not part of a row
+
+    private int size = 0;
+
+    public CandidateTable(int capacity) {
+        columns = new double[COLUMNS.length][capacity];
+        w = columns[WORKLOAD];
+        m = columns[MACHINES];
+        rt = columns[RT];
+        cpuP = columns[CPU_POWER];
+        cpuE = columns[CPU_ENERGY];
+        thres = columns[THRES_TEMP];
+        env = columns[ENV_TEMP];
+        acP = columns[AC_POWER];
+        acE = columns[AC_ENERGY];
+        total = columns[TOTAL_ENERGY];
+        score = new double[capacity];
+    }
+
+    /*
+     * Empties the table down to one candidate per machine count, for
+     * workload.
+     */
+    public void reset(double workload, int machines[]) {
+        if (machines.length > score.length) {
+            throw new IllegalArgumentException(machines.length + " candidates, room for " + score.length);
+        }
+        size = machines.length;
+        for (double column[] : columns) {
+            Arrays.fill(column, 0, size, 0);
+        }
+        Arrays.fill(w, 0, size, workload);
+        for (int i = 0; i < size; i++) {
+            m[i] = machines[i];
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return score.length;
+    }
+
+    public double[] column(int c) {
+        return columns[c];
+    }
+
+    /*
+     * The column a training attribute such as CPUPower is held in, or -1.
+     */
+    public static int indexOf(String name) {
+        return Arrays.asList(COLUMNS).indexOf(name);
+    }
+
+    public double get(int i, int c) {
+        return columns[c][i];
+    }
+
+    /*
+     * Candidate i as a row in COLUMNS order, copied out so it outlives the
+     * next reset.
+     */
+    public double[] row(int i) {
+        double row[] = new double[columns.length];
+        for (int c = 0; c < row.length; c++) {
+            row[c] = columns[c][i];
+        }
+        return row;
+    }
+
+    /*
+     * Copies candidate i of from into row j of this table, score included.
+     */
+    public void copy(CandidateTable from, int i, int j) {
+        for (int c = 0; c < columns.length; c++) {
+            columns[c][j] = from.columns[c][i];
+        }
+        score[j] = from.score[i];
+    }
+}
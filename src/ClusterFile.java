@@ -0,0 +1,293 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/*
+ * The cluster LabSetup and LabSetup1 describe, as one binary file mapped
+ * read-only and read in place, so opening it costs the same for a thousand
+ * hosts as for a million. Big-endian, doubles first so they stay aligned:
+ *
+ *   int magic "SGCL", int version, int groups, int hosts, int servers,
+ *   int workloads, int 0, int 0
+ *   double flops[groups]
+ *   double alpha[hosts], double beta[hosts]   watts idle, extra watts busy
+ *   int id[hosts], int group[hosts]
+ *   int server[servers]                       host ids in platform order
+ *   int workload[workloads]
+ *
+ * main converts LabSetup, or a CSV of id,group,flops,alpha,beta rows in
+ * platform order, into this format.
+ */
+public class ClusterFile {
+
+    private static final int MAGIC = 0x5347434C;
+    private static final int VERSION = 1;
+    private static final int HEADER = 32;
+
+    private final MappedByteBuffer map;
+    private final int groups, hosts, servers, workloads;
+    private final int flopsAt, alphaAt, betaAt, idAt, groupAt, serverAt, workloadAt;
+
+    private ClusterFile(MappedByteBuffer map) throws Exception {
+        this.map = map;
+        if (map.capacity() < HEADER || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new Exception("not a version " + VERSION + " cluster file");
+        }
+        groups = map.getInt(8);
+        hosts = map.getInt(12);
+        servers = map.getInt(16);
+        workloads = map.getInt(20);
+
+        flopsAt = HEADER;
+        alphaAt = flopsAt + 8 * groups;
+        betaAt = alphaAt + 8 * hosts;
+        idAt = betaAt + 8 * hosts;
+        groupAt = idAt + 4 * hosts;
+        serverAt = groupAt + 4 * hosts;
+        workloadAt = serverAt + 4 * servers;
+        if (map.capacity() < workloadAt + 4L * workloads) {
+            throw new Exception("truncated cluster file");
+        }
+    }
+
+    public static ClusterFile open(File file) throws Exception {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return new ClusterFile(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    public int getGroups() {
+        return groups;
+    }
+
+    public int getHosts() {
+        return hosts;
+    }
+
+    public int getServers() {
+        return servers;
+    }
+
+    public int getWorkloads() {
+        return workloads;
+    }
+
+    public double getFlops(int g) {
+        return map.getDouble(flopsAt + 8 * g);
+    }
+
+    public int getId(int h) {
+        return map.getInt(idAt + 4 * h);
+    }
+
+    public int getGroup(int h) {
+        return map.getInt(groupAt + 4 * h);
+    }
+
+    public double getAlpha(int h) {
+        return map.getDouble(alphaAt + 8 * h);
+    }
+
+    public double getBeta(int h) {
+        return map.getDouble(betaAt + 8 * h);
+    }
+
+    public int getServer(int k) {
+        return map.getInt(serverAt + 4 * k);
+    }
+
+    public int getWorkload(int w) {
+        return map.getInt(workloadAt + 4 * w);
+    }
+
+    /*
+     * The per-group arrays SunuwarUNL takes, in file order within each
+     * group. These copy, unlike the getters.
+     */
+    public double[] flops() {
+        double flops[] = new double[groups];
+        for (int g = 0; g < groups; g++) {
+            flops[g] = getFlops(g);
+        }
+        return flops;
+    }
+
+    public int[][] serverGroups() {
+        int count[] = new int[groups];
+        for (int h = 0; h < hosts; h++) {
+            count[getGroup(h)]++;
+        }
+        int serverGroup[][] = new int[groups][];
+        for (int g = 0; g < groups; g++) {
+            serverGroup[g] = new int[count[g]];
+            count[g] = 0;
+        }
+        for (int h = 0; h < hosts; h++) {
+            int g = getGroup(h);
+            serverGroup[g][count[g]++] = getId(h);
+        }
+        return serverGroup;
+    }
+
+    public double[][] alphas() {
+        return perGroup(alphaAt);
+    }
+
+    public double[][] betas() {
+        return perGroup(betaAt);
+    }
+
+    public int[] workloads() {
+        int workload[] = new int[workloads];
+        for (int w = 0; w < workloads; w++) {
+            workload[w] = getWorkload(w);
+        }
+        return workload;
+    }
+
+    private double[][] perGroup(int at) {
+        int count[] = new int[groups];
+        for (int h = 0; h < hosts; h++) {
+            count[getGroup(h)]++;
+        }
+        double values[][] = new double[groups][];
+        for (int g = 0; g < groups; g++) {
+            values[g] = new double[count[g]];
+            count[g] = 0;
+        }
+        for (int h = 0; h < hosts; h++) {
+            int g = getGroup(h);
+            values[g][count[g]++] = map.getDouble(at + 8 * h);
+        }
+        return values;
+    }
+
+    public static void write(File file, double flops[], int id[], int group[], double alpha[], double beta[],
+            int server[], int workload[]) throws Exception {
+
+        int hosts = id.length;
+        long size = HEADER + 8L * (flops.length + 2 * hosts) + 4L * (2 * hosts + server.length + workload.length);
+        if (size > Integer.MAX_VALUE) {
+            throw new Exception("cluster too large for one file: " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(flops.length).putInt(hosts).putInt(server.length)
+                .putInt(workload.length).putInt(0).putInt(0);
+        buffer.asDoubleBuffer().put(flops).put(alpha).put(beta);
+        buffer.position(buffer.position() + 8 * (flops.length + 2 * hosts));
+        buffer.asIntBuffer().put(id).put(group).put(server).put(workload);
+        buffer.rewind();
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                ch.write(buffer);
+            }
+        }
+    }
+
+    /*
+     * LabSetup's cluster, hosts group by group.
+     */
+    public static void writeLabSetup(File file) throws Exception {
+
+        int hosts = 0;
+        for (int server[] : LabSetup.SERVER_GROUP) {
+            hosts += server.length;
+        }
+
+        int id[] = new int[hosts], group[] = new int[hosts];
+        double alpha[] = new double[hosts], beta[] = new double[hosts];
+        int h = 0;
+        for (int g = 0; g < LabSetup.SERVER_GROUP.length; g++) {
+            for (int j = 0; j < LabSetup.SERVER_GROUP[g].length; j++, h++) {
+                id[h] = LabSetup.SERVER_GROUP[g][j];
+                group[h] = g;
+                alpha[h] = LabSetup1.ALPHAS[g][j];
+                beta[h] = LabSetup1.BETAS[g][j];
+            }
+        }
+
+        write(file, LabSetup.FLOPS, id, group, alpha, beta, LabSetup.SERVERS, LabSetup.WORKLOAD);
+    }
+
+    /*
+     * Hosts from a CSV with an id,group,flops,alpha,beta header, one row per
+     * host in platform order, beta being what the host draws busy on top of
+     * alpha as in LabSetup1; a group's flops come from its first row. The
+     * workloads are LabSetup's.
+     */
+    public static void writeCsv(File csv, File file) throws Exception {
+
+        ArrayList<double[]> rows = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(csv))) {
+            br.readLine();
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String values[] = line.split(",");
+                double row[] = new double[5];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = Double.parseDouble(values[i].trim());
+                }
+                rows.add(row);
+            }
+        }
+
+        int groups = 0;
+        for (double row[] : rows) {
+            groups = Math.max(groups, (int) row[1] + 1);
+        }
+        double flops[] = new double[groups];
+        boolean seen[] = new boolean[groups];
+
+        int hosts = rows.size();
+        int id[] = new int[hosts], group[] = new int[hosts];
+        double alpha[] = new double[hosts], beta[] = new double[hosts];
+        for (int h = 0; h < hosts; h++) {
+            double row[] = rows.get(h);
+            id[h] = (int) row[0];
+            group[h] = (int) row[1];
+            if (!seen[group[h]]) {
+                flops[group[h]] = row[2];
+                seen[group[h]] = true;
+            }
+            alpha[h] = row[3];
+            beta[h] = row[4];
+        }
+
+        write(file, flops, id, group, alpha, beta, id.clone(), LabSetup.WORKLOAD);
+    }
+
+    /*
+     * ClusterFile labsetup OUT, or ClusterFile HOSTS.csv OUT.
+     */
+    public static void main(String[] args) {
+
+        try {
+            if (args.length != 2) {
+                System.out.println("usage: ClusterFile labsetup|HOSTS.csv OUT");
+                return;
+            }
+            File out = new File(args[1]);
+            if (args[0].equals("labsetup")) {
+                writeLabSetup(out);
+            } else {
+                writeCsv(new File(args[0]), out);
+            }
+
+            ClusterFile cluster = open(out);
+            System.out.println(out + ": " + cluster.getGroups() + " groups, " + cluster.getHosts() + " hosts, "
+                    + cluster.getServers() + " servers, " + out.length() + " bytes");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+}
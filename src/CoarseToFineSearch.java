@@ -0,0 +1,62 @@
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/*
+ * Scores a grid of about gridSize points, then repeats the grid inside the
+ * neighbourhood of the best few points until the step reaches one machine.
+ */
+public class CoarseToFineSearch implements CandidateSearch {
+
+    private final int gridSize;
+    private final int regions;
+
+    public CoarseToFineSearch(int gridSize, int regions) {
+        this.gridSize = Math.max(3, gridSize);
+        this.regions = Math.max(1, regions);
+    }
+
+    @Override
+    public int search(Objective objective, int lo, int hi) throws Exception {
+
+        int step = Math.max(1, (int) Math.ceil((hi - lo) / (double) (gridSize - 1)));
+        int windows[][] = {{lo, hi}};
+        int best = lo;
+        double bestScore = Double.MAX_VALUE;
+
+        while (true) {
+            TreeSet<Integer> grid = new TreeSet<>();
+            for (int w[] : windows) {
+                for (int m = w[0]; m <= w[1]; m += step) {
+                    grid.add(m);
+                }
+                grid.add(w[1]);
+            }
+
+            int machines[] = grid.stream().mapToInt(Integer::intValue).toArray();
+            double scores[] = CandidateSearch.evaluate(objective, machines);
+
+            int i = CandidateSearch.best(machines, scores);
+            if (scores[i] < bestScore || scores[i] == bestScore && machines[i] < best) {
+                best = machines[i];
+                bestScore = scores[i];
+            }
+
+            if (step == 1) {
+                return best;
+            }
+
+            Integer order[] = new Integer[machines.length];
+            for (int k = 0; k < order.length; k++) {
+                order[k] = k;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(scores[a], scores[b]));
+
+            windows = new int[Math.min(regions, order.length)][];
+            for (int k = 0; k < windows.length; k++) {
+                int m = machines[order[k]];
+                windows[k] = new int[]{Math.max(lo, m - step), Math.min(hi, m + step)};
+            }
+            step = Math.max(1, Math.min(step - 1, (int) Math.ceil(2.0 * step / (gridSize - 1))));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Binary column store for results. The file is a run of blocks, each an int
+ * row count followed by that many doubles for every column in
+ * SimulationResult.COLUMNS order. Rows are buffered per column and a block is
+ * appended every blockRows results and on close.
+ */
+public class ColumnarResultSink implements ResultSink {
+
+    private final FileChannel channel;
+    private final double columns[][];
+    private final ByteBuffer buffer;
+    private int rows = 0;
+
+    public ColumnarResultSink(File file, int blockRows) throws Exception {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        columns = new double[SimulationResult.COLUMNS.length][blockRows];
+        buffer = ByteBuffer.allocate(4 + columns.length * blockRows * 8);
+    }
+
+    @Override
+    public synchronized void accept(SimulationResult result) throws Exception {
+        for (int i = 0; i < columns.length; i++) {
+            columns[i][rows] = result.get(i);
+        }
+        if (++rows == columns[0].length) {
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws Exception {
+
+        if (rows == 0) {
+            return;
+        }
+
+        buffer.clear();
+        buffer.putInt(rows);
+        for (double column[] : columns) {
+            for (int r = 0; r < rows; r++) {
+                buffer.putDouble(column[r]);
+            }
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        rows = 0;
+    }
+
+    /*
+     * All blocks of file joined, one array per column.
+     */
+    public static double[][] read(File file) throws Exception {
+
+        double result[][] = new double[SimulationResult.COLUMNS.length][0];
+        int size = 0;
+
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer data = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            while (data.remaining() >= 4) {
+                int rows = data.getInt();
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = Arrays.copyOf(result[i], size + rows);
+                    data.asDoubleBuffer().get(result[i], size, rows);
+                    data.position(data.position() + rows * 8);
+                }
+                size += rows;
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+
+/*
+ * Appends one line per result to a CSV file, writing the header if the file
+ * is new, and flushes every line.
+ */
+public class CsvResultSink implements ResultSink {
+
+    private final BufferedWriter bw;
+
+    public CsvResultSink(File file) throws Exception {
+        boolean fresh = file.length() == 0;
+        bw = new BufferedWriter(new FileWriter(file, true));
+        if (fresh) {
+            bw.write(String.join(",", SimulationResult.COLUMNS));
+            bw.newLine();
+            bw.flush();
+        }
+    }
+
+    @Override
+    public synchronized void accept(SimulationResult result) throws Exception {
+        bw.write(result.getWorkload() + "," + result.getMachines() + "," + result.getCpuEnergy() + ","
+                + result.getAcEnergy() + "," + result.getTime());
+        bw.newLine();
+        bw.flush();
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        bw.close();
+    }
+}
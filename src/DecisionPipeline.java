@@ -0,0 +1,156 @@
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * gmc_test's decisions as three stages joined by bounded queues: a predictor
+ * thread runs WekaML, a simulator thread writes the platform and runs it,
+ * and the calling thread prints and updates the history in decision order.
+ * Prediction for decision i waits until the history holds every decision
+ * before i - staleness, so it overlaps the simulations still in flight;
+ * staleness 0 is the plain loop. In strict mode decision i's update also
+ * waits until decision i + staleness has been predicted, so every
+ * prediction sees exactly the same history from run to run; the decisions
+ * predicted meanwhile have to fit in the queues, so there the update queue
+ * holds at least staleness of them.
+ *
+ * simgrid.pipeline.staleness (default 1), simgrid.pipeline.strict and
+ * simgrid.pipeline.depth (queue capacity, default 2) configure it.
+ */
+public class DecisionPipeline {
+
+    private final SimGridJava sim;
+    private final WekaML gmc;
+    private final File dir;
+    private final int staleness = Integer.getInteger("simgrid.pipeline.staleness", 1);
+    private final boolean strict = Boolean.getBoolean("simgrid.pipeline.strict");
+    private final int depth = Integer.getInteger("simgrid.pipeline.depth", 2);
+
+    private int predicted = 0; //decisions predicted so far
+    private int applied = 0; //decisions in the history so far
+    private boolean failed = false; //no more predictions are coming
+
+    public DecisionPipeline(SimGridJava sim, WekaML gmc, File dir) {
+        this.sim = sim;
+        this.gmc = gmc;
+        this.dir = dir;
+    }
+
+    /*
+     * Decides workload schedule[i] for every i, in order.
+     */
+    public void run(int schedule[], PrintStream out) throws Exception {
+
+        BlockingQueue<Step> toSimulate = new ArrayBlockingQueue<>(depth);
+        BlockingQueue<Step> toUpdate = new ArrayBlockingQueue<>(strict ? Math.max(depth, staleness) : depth);
+        ExecutorService stages = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "gmc-pipeline");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            stages.submit(() -> {
+                for (int i = 0; i < schedule.length; i++) {
+                    Step step = new Step(schedule[i], sim.job(schedule[i]));
+                    try {
+                        awaitApplied(i - staleness);
+                        step.optimumConfig = sim.predict(gmc, step.job);
+                        predicted(i + 1);
+                    } catch (Exception ex) {
+                        step.error = ex;
+                        failed();
+                    }
+                    toSimulate.put(step);
+                    if (step.error != null) {
+                        break;
+                    }
+                }
+                return null;
+            });
+
+            stages.submit(() -> {
+                for (int i = 0; i < schedule.length; i++) {
+                    Step step = toSimulate.take();
+                    if (step.error == null) {
+                        try {
+                            int m = sim.prepare(dir, step.job, step.optimumConfig);
+                            step.before = sim.idleMillis();
+                            step.output = sim.simulate(dir, step.job, m);
+                        } catch (Exception ex) {
+                            step.error = ex;
+                        }
+                    }
+                    toUpdate.put(step);
+                    if (step.error != null) {
+                        break;
+                    }
+                }
+                return null;
+            });
+
+            for (int i = 0; i < schedule.length; i++) {
+                Step step = toUpdate.take();
+                if (step.error != null) {
+                    throw step.error;
+                }
+                if (strict) {
+                    awaitPredicted(Math.min(schedule.length, i + staleness + 1));
+                }
+
+                out.println((step.w + 1) + "," + Arrays.toString(step.optimumConfig));
+                out.println(step.before + "," + (step.w + 1) + "," + step.output);
+                sim.update(gmc, step.optimumConfig, step.output);
+                applied(i + 1);
+            }
+        } finally {
+            stages.shutdownNow();
+        }
+    }
+
+    private synchronized void awaitApplied(int n) throws InterruptedException {
+        while (applied < n) {
+            wait();
+        }
+    }
+
+    private synchronized void applied(int n) {
+        applied = n;
+        notifyAll();
+    }
+
+    private synchronized void awaitPredicted(int n) throws InterruptedException {
+        while (predicted < n && !failed) {
+            wait();
+        }
+    }
+
+    private synchronized void predicted(int n) {
+        predicted = n;
+        notifyAll();
+    }
+
+    private synchronized void failed() {
+        failed = true;
+        notifyAll();
+    }
+
+    private static class Step {
+
+        private final int w;
+        private final TraceJob job;
+        private double optimumConfig[];
+        private SimulationResult output;
+        private long before;
+        private Exception error;
+
+        private Step(int w, TraceJob job) {
+            this.w = w;
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+public class ExhaustiveSearch implements CandidateSearch {
+
+    @Override
+    public int search(Objective objective, int lo, int hi) throws Exception {
+        int machines[] = CandidateSearch.range(lo, hi);
+        return machines[CandidateSearch.best(machines, CandidateSearch.evaluate(objective, machines))];
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Arrays;
+
+/*
+ * Brackets the minimum with a grid of gridSize points, then narrows the
+ * brackets around the best few grid points by golden-section steps and
+ * scores what is left of each. Predicted scores zigzag from one machine
+ * count to the next, so a golden-section probe at m is the lowest score
+ * within window of m rather than the score at m. It scores
+ * O(gridSize + regions * window * log(hi - lo)) candidates.
+ */
+public class GoldenSectionSearch implements CandidateSearch {
+
+    private static final double INV_PHI = (Math.sqrt(5) - 1) / 2;
+
+    private final int gridSize;
+    private final int regions;
+    private final int window;
+
+    public GoldenSectionSearch(int gridSize, int regions, int window) {
+        this.gridSize = Math.max(2, gridSize);
+        this.regions = Math.max(1, regions);
+        this.window = Math.max(0, window);
+    }
+
+    @Override
+    public int search(Objective objective, int lo, int hi) throws Exception {
+
+        Best best = new Best();
+
+        int step = Math.max(1, (int) Math.ceil((hi - lo) / (double) (gridSize - 1)));
+        int grid[] = new int[(hi - lo + step - 1) / step + 1];
+        for (int i = 0; i < grid.length; i++) {
+            grid[i] = Math.min(hi, lo + i * step);
+        }
+        double scores[] = CandidateSearch.evaluate(objective, grid);
+        best.offer(grid, scores);
+
+        Integer order[] = new Integer[grid.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(scores[x], scores[y]));
+
+        for (int r = 0; r < Math.min(regions, order.length); r++) {
+            int g = grid[order[r]];
+            int a = Math.max(lo, g - step), b = Math.min(hi, g + step);
+            while (b - a > 2 * window + 3) {
+                int c = (int) Math.round(b - (b - a) * INV_PHI);
+                int d = (int) Math.round(a + (b - a) * INV_PHI);
+                if (c >= d) {
+                    d = c + 1;
+                }
+
+                if (probe(objective, c, lo, hi, best) <= probe(objective, d, lo, hi, best)) {
+                    b = d;
+                } else {
+                    a = c;
+                }
+            }
+
+            int machines[] = CandidateSearch.range(a, b);
+            best.offer(machines, CandidateSearch.evaluate(objective, machines));
+        }
+
+        return best.m;
+    }
+
+    /*
+     * The lowest score within window of m.
+     */
+    private double probe(Objective objective, int m, int lo, int hi, Best best) throws Exception {
+
+        int machines[] = CandidateSearch.range(Math.max(lo, m - window), Math.min(hi, m + window));
+        double scores[] = CandidateSearch.evaluate(objective, machines);
+        best.offer(machines, scores);
+
+        double min = Double.POSITIVE_INFINITY;
+        for (double score : scores) {
+            min = Math.min(min, score);
+        }
+        return min;
+    }
+
+    /*
+     * The lowest scored candidate so far, ties going to the smaller count.
+     */
+    private static class Best {
+
+        private int m = -1;
+        private double score;
+
+        private void offer(int machines[], double scores[]) {
+            for (int i = 0; i < machines.length; i++) {
+                if (m < 0 || scores[i] < score || scores[i] == score && machines[i] < m) {
+                    m = machines[i];
+                    score = scores[i];
+                }
+            }
+        }
+    }
+}
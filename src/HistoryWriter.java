@@ -0,0 +1,202 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Write-behind sink for TrainingData rows. Rows wait in a bounded queue and a
+ * single background thread inserts them over one connection with JDBC
+ * batches of up to flushSize rows, or whatever has arrived after flushInterval
+ * milliseconds. close() and JVM shutdown drain the queue before returning.
+ * Rows a batch fails to insert are kept and sent again over a new connection
+ * at the next flush, tried at most once per flushInterval while the database
+ * is unreachable, and the failure is thrown from flush() and close() for as
+ * long as they stay unwritten.
+ */
+public class HistoryWriter {
+
+    private final String url;
+    private final int flushSize;
+    private final long flushInterval;
+    private final BlockingQueue<Object> queue;
+    private final Thread worker;
+    private final Thread shutdownHook;
+
+    private volatile boolean closed = false;
+    private Connection con;
+    private PreparedStatement ps;
+    private final ArrayList<double[]> batch = new ArrayList<>(); //rows not yet written
+    private volatile Exception failure;
+
+    public HistoryWriter(String url, int capacity, int flushSize, long flushInterval) {
+        this.url = url;
+        this.flushSize = flushSize;
+        this.flushInterval = flushInterval;
+        queue = new ArrayBlockingQueue<>(capacity);
+
+        worker = new Thread(this::drain, "history-writer");
+        worker.setDaemon(true);
+        worker.start();
+
+        shutdownHook = new Thread(() -> {
+            try {
+                close();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public void add(double row[]) throws Exception {
+        if (closed) {
+            throw new Exception("history writer is closed");
+        }
+        queue.put(row.clone());
+    }
+
+    public void flush() throws Exception {
+        if (closed) {
+            throw new Exception("history writer is closed");
+        }
+        drainQueue();
+    }
+
+    public void close() throws Exception {
+
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            drainQueue();
+        } finally {
+            worker.interrupt();
+            worker.join();
+
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ex) {
+                //already shutting down
+            }
+        }
+    }
+
+    /*
+     * Waits for everything queued so far to be sent, and throws the last
+     * failure if some of it could not be written.
+     */
+    private void drainQueue() throws Exception {
+        CountDownLatch done = new CountDownLatch(1);
+        queue.put(done);
+        while (!done.await(100, TimeUnit.MILLISECONDS)) {
+            if (!worker.isAlive()) {
+                throw new Exception("history writer has stopped");
+            }
+        }
+
+        Exception ex = failure;
+        if (ex != null) {
+            throw new Exception("history rows not written", ex);
+        }
+    }
+
+    private void drain() {
+
+        long deadline = System.currentTimeMillis() + flushInterval;
+
+        while (true) {
+            Object next;
+            try {
+                next = queue.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                if (closed && queue.isEmpty()) {
+                    break;
+                }
+                continue;
+            }
+
+            try {
+                if (next instanceof double[]) {
+                    addBatch((double[]) next);
+                }
+
+                if (next instanceof CountDownLatch || failure == null && batch.size() >= flushSize
+                        || System.currentTimeMillis() >= deadline) {
+                    deadline = System.currentTimeMillis() + flushInterval;
+                    executeBatch();
+                }
+            } catch (Exception ex) {
+                if (failure == null) {
+                    ex.printStackTrace();
+                }
+                failure = ex;
+                disconnect();
+            }
+
+            if (next instanceof CountDownLatch) {
+                ((CountDownLatch) next).countDown();
+            }
+        }
+
+        disconnect();
+    }
+
+    private void addBatch(double row[]) throws Exception {
+
+        batch.add(row);
+        if (con != null) {
+            bind(row);
+        } else if (failure == null) {
+            connect();
+        }
+    }
+
+    /*
+     * A new connection, with every row not yet written batched on it again.
+     */
+    private void connect() throws Exception {
+
+        con = DriverManager.getConnection(url, "root", "");
+        ps = con.prepareStatement("INSERT INTO `TrainingData` VALUES (?, ?, ?, ?, ?, ?, ?)");
+        for (double row[] : batch) {
+            bind(row);
+        }
+    }
+
+    private void bind(double row[]) throws Exception {
+        for (int i = 0; i < row.length; i++) {
+            ps.setDouble(i + 1, row[i]);
+        }
+        ps.addBatch();
+    }
+
+    private void executeBatch() throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (con == null) {
+            connect();
+        }
+        ps.executeBatch();
+        batch.clear();
+        failure = null;
+    }
+
+    private void disconnect() {
+        try {
+            if (con != null) {
+                con.close();
+            }
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+        con = null;
+        ps = null;
+    }
+}
@@ -0,0 +1,85 @@
+import java.util.Arrays;
+
+public class HostCatalog {
+
+    private int size = 0;
+    private int ids[];
+    private double speed[];
+    private double flops[];
+    private double alpha[];
+    private double beta[];
+    private int index[] = new int[0]; //host id -> dense index, -1 if absent
+
+    public HostCatalog(int capacity) {
+        ids = new int[capacity];
+        speed = new double[capacity];
+        flops = new double[capacity];
+        alpha = new double[capacity];
+        beta = new double[capacity];
+    }
+
+    public void put(int id, double speed, double flops, double alpha, double beta) {
+
+        int i = indexOf(id);
+        if (i < 0) {
+            if (size == ids.length) {
+                grow(Math.max(16, size * 2));
+            }
+            if (id >= index.length) {
+                int old = index.length;
+                index = Arrays.copyOf(index, Math.max(id + 1, old * 2));
+                Arrays.fill(index, old, index.length, -1);
+            }
+            i = size++;
+            ids[i] = id;
+            index[id] = i;
+        }
+
+        this.speed[i] = speed;
+        this.flops[i] = flops;
+        this.alpha[i] = alpha;
+        this.beta[i] = beta;
+    }
+
+    public void putAll(HostCatalog other) {
+        for (int i = 0; i < other.size; i++) {
+            put(other.ids[i], other.speed[i], other.flops[i], other.alpha[i], other.beta[i]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int indexOf(int id) {
+        return id >= 0 && id < index.length ? index[id] : -1;
+    }
+
+    public int getId(int i) {
+        return ids[i];
+    }
+
+    public double getSpeed(int i) {
+        return speed[i];
+    }
+
+    public double getFlops(int i) {
+        return flops[i];
+    }
+
+    public double getAlpha(int i) {
+        return alpha[i];
+    }
+
+    public double getBeta(int i) {
+        return beta[i];
+    }
+
+    private void grow(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        flops = Arrays.copyOf(flops, capacity);
+        alpha = Arrays.copyOf(alpha, capacity);
+        beta = Arrays.copyOf(beta, capacity);
+    }
+}
@@ -0,0 +1,561 @@
+import java.util.Arrays;
+
+/*
+ * IBk for a handful of numeric features, on primitive arrays behind a k-d
+ * tree. It follows IBk's arithmetic: features are scaled to their ranges,
+ * neighbours tied with the k-th nearest are all used, -I weights them by
+ * 1 / (d + 0.001) and -F by 1 - d, where d is the Euclidean distance over
+ * the square root of the feature count, and -X picks k from 1 to -K by
+ * hold-one-out error, squared with -E, once per fit. AdditiveRegression over
+ * IBk is followed too: the class mean, then up to -I stages each fitted to
+ * the residuals the stages before left, times -S, stopping once the squared
+ * residuals stop falling.
+ *
+ * IBk widens its ranges with every instance it classifies, so its answers
+ * depend on the order and chunking of the queries. Here a batch is scaled
+ * to the training rows and the whole batch at once, which is what IBk
+ * gives for queries inside the training ranges.
+ */
+class KnnRegressor {
+
+    private static final int NONE = 0, INVERSE = 1, SIMILARITY = 2;
+    private static final double SMALL = 1e-6; //weka.core.Utils.SMALL
+
+    private final int kUpper;
+    private final boolean crossValidate;
+    private final boolean meanSquared;
+    private final int weighting;
+    private final int iterations; //0 for plain IBk
+    private final double shrinkage;
+
+    private int dims;
+    private int n;
+    private double x[][] = new double[0][]; //[feature][row]
+    private double y[] = new double[0];
+    private double initial;
+    private Stage stages[] = new Stage[0];
+
+    private double min[] = new double[0], max[] = new double[0]; //ranges in use, per feature
+    private double scaled[][] = new double[0][]; //x scaled to the ranges in use
+    private double target[] = new double[0]; //the query, scaled
+    private double offset[] = new double[0]; //per axis, how far query is from the cell being searched
+    private double found[] = new double[16], converted[] = new double[16];
+    private int foundAt[] = new int[16];
+    private int count;
+
+    private KnnRegressor(int kUpper, boolean crossValidate, boolean meanSquared, int weighting, int iterations, double shrinkage) {
+        this.kUpper = Math.max(1, kUpper);
+        this.crossValidate = crossValidate;
+        this.meanSquared = meanSquared;
+        this.weighting = weighting;
+        this.iterations = iterations;
+        this.shrinkage = shrinkage;
+    }
+
+    /*
+     * The regressor for a WekaML classifier spec, or null unless the spec is
+     * IBk or AdditiveRegression over IBk.
+     */
+    static KnnRegressor forSpec(String spec[]) {
+
+        String ibk[] = spec;
+        int iterations = 0;
+        double shrinkage = 1;
+
+        if (spec[0].equals("weka.classifiers.meta.AdditiveRegression")) {
+            int split = Arrays.asList(spec).indexOf("--");
+            if (!"weka.classifiers.lazy.IBk".equals(option(spec, "-W", 1, split))) {
+                return null;
+            }
+            iterations = Integer.parseInt(option(spec, "-I", 1, split, "10"));
+            shrinkage = Double.parseDouble(option(spec, "-S", 1, split, "1"));
+            ibk = new String[spec.length - split];
+            ibk[0] = "weka.classifiers.lazy.IBk";
+            System.arraycopy(spec, split + 1, ibk, 1, ibk.length - 1);
+        } else if (!spec[0].equals("weka.classifiers.lazy.IBk")) {
+            return null;
+        }
+
+        int weighting = flag(ibk, "-I") ? INVERSE : flag(ibk, "-F") ? SIMILARITY : NONE;
+        return new KnnRegressor(Integer.parseInt(option(ibk, "-K", 1, ibk.length, "1")), flag(ibk, "-X"), flag(ibk, "-E"),
+                weighting, iterations, shrinkage);
+    }
+
+    private static String option(String spec[], String name, int from, int to) {
+        return option(spec, name, from, to, null);
+    }
+
+    private static String option(String spec[], String name, int from, int to, String otherwise) {
+        for (int i = from; i + 1 < to; i++) {
+            if (spec[i].equals(name)) {
+                return spec[i + 1];
+            }
+        }
+        return otherwise;
+    }
+
+    private static boolean flag(String spec[], String name) {
+        return Arrays.asList(spec).subList(1, spec.length).contains(name);
+    }
+
+    /*
+     * Whether rows can be added after fit(), as with IBk but not
+     * AdditiveRegression.
+     */
+    boolean isUpdateable() {
+        return iterations == 0;
+    }
+
+    /*
+     * Fits to rows[i][0..dims) with class rows[i][dims], rows whose class is
+     * missing left out.
+     */
+    void fit(double rows[][], int dims) {
+
+        this.dims = dims;
+        n = 0;
+        x = new double[dims][Math.max(16, rows.length)];
+        scaled = new double[dims][Math.max(16, rows.length)];
+        y = new double[Math.max(16, rows.length)];
+        for (double row[] : rows) {
+            if (!Double.isNaN(row[dims])) {
+                append(row);
+            }
+        }
+        target = new double[dims];
+        offset = new double[dims];
+        min = new double[dims];
+        max = new double[dims];
+
+        if (iterations == 0) {
+            stages = new Stage[]{new Stage(y)};
+            stages[0].select(); //k stays as chosen here while rows are added
+            return;
+        }
+
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += y[i];
+        }
+        initial = n > 0 ? sum / n : 0;
+        if (dims == 0) {
+            stages = new Stage[0];
+            return;
+        }
+
+        double residual[] = new double[n];
+        double error = 0;
+        for (int i = 0; i < n; i++) {
+            residual[i] = y[i] - initial;
+            error += residual[i] * residual[i];
+        }
+
+        trainingRanges();
+        rescale();
+        Stage fitted[] = new Stage[iterations];
+        int m = 0;
+        for (double diff = Double.MAX_VALUE; m < iterations && diff > SMALL; m++) {
+            fitted[m] = new Stage(residual.clone());
+            double next[] = new double[n];
+            sum = 0;
+            for (int i = 0; i < n; i++) {
+                copyRow(i);
+                next[i] = residual[i] - fitted[m].predict() * shrinkage;
+                sum += next[i] * next[i];
+            }
+            residual = next;
+            diff = error - sum;
+            error = sum;
+        }
+        stages = Arrays.copyOf(fitted, m);
+    }
+
+    void add(double row[]) {
+        if (!isUpdateable()) {
+            throw new IllegalStateException("AdditiveRegression is not updateable");
+        }
+        if (Double.isNaN(row[dims])) {
+            return;
+        }
+        append(row);
+        stages[0].grow(y, n);
+    }
+
+    /*
+     * Predicts the first n rows of features, [feature][row], into out,
+     * allocating nothing once buffers have grown to the batch.
+     */
+    void predict(double features[][], int n, double out[]) {
+
+        trainingRanges();
+        for (int a = 0; a < dims; a++) {
+            for (int i = 0; i < n; i++) {
+                min[a] = Math.min(min[a], features[a][i]);
+                max[a] = Math.max(max[a], features[a][i]);
+            }
+        }
+        rescale();
+
+        for (int i = 0; i < n; i++) {
+            for (int a = 0; a < dims; a++) {
+                target[a] = norm(features[a][i], a);
+            }
+            if (iterations == 0) {
+                out[i] = stages[0].predict();
+            } else {
+                double value = initial;
+                for (Stage stage : stages) {
+                    value += stage.predict() * shrinkage;
+                }
+                out[i] = value;
+            }
+        }
+    }
+
+    /*
+     * The k each stage settled on, for checking against IBk.
+     */
+    int[] getK() {
+        int k[] = new int[stages.length];
+        for (int s = 0; s < stages.length; s++) {
+            k[s] = stages[s].k();
+        }
+        return k;
+    }
+
+    private void append(double row[]) {
+        if (n == y.length) {
+            y = Arrays.copyOf(y, 2 * n);
+            for (int a = 0; a < dims; a++) {
+                x[a] = Arrays.copyOf(x[a], 2 * n);
+                scaled[a] = Arrays.copyOf(scaled[a], 2 * n);
+            }
+        }
+        for (int a = 0; a < dims; a++) {
+            x[a][n] = row[a];
+        }
+        y[n++] = row[dims];
+    }
+
+    private void copyRow(int i) {
+        for (int a = 0; a < dims; a++) {
+            target[a] = scaled[a][i];
+        }
+    }
+
+    private void trainingRanges() {
+        for (int a = 0; a < dims; a++) {
+            min[a] = Double.POSITIVE_INFINITY;
+            max[a] = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                min[a] = Math.min(min[a], x[a][i]);
+                max[a] = Math.max(max[a], x[a][i]);
+            }
+        }
+    }
+
+    /*
+     * Feature a of v scaled to its range, as weka's NormalizableDistance
+     * does it.
+     */
+    private double norm(double v, int a) {
+        double width = max[a] - min[a];
+        return width == 0 ? 0 : (v - min[a]) / width;
+    }
+
+    private void rescale() {
+        for (int a = 0; a < dims; a++) {
+            for (int i = 0; i < n; i++) {
+                scaled[a][i] = norm(x[a][i], a);
+            }
+        }
+    }
+
+    private double distance(int p) {
+        double sum = 0;
+        for (int a = 0; a < dims; a++) {
+            double diff = target[a] - scaled[a][p];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    /*
+     * Keeps found sorted and holding the k nearest so far plus everything
+     * tied with the k-th.
+     */
+    private void offer(int p, double d, int k) {
+
+        if (count >= k && d > found[k - 1]) {
+            return;
+        }
+        if (count == found.length) {
+            found = Arrays.copyOf(found, 2 * count);
+            converted = Arrays.copyOf(converted, 2 * count);
+            foundAt = Arrays.copyOf(foundAt, 2 * count);
+        }
+
+        int i = count++;
+        while (i > 0 && found[i - 1] > d) {
+            found[i] = found[i - 1];
+            foundAt[i] = foundAt[i - 1];
+            i--;
+        }
+        found[i] = d;
+        foundAt[i] = p;
+
+        while (count > k && found[count - 1] > found[k - 1]) {
+            count--;
+        }
+    }
+
+    /*
+     * The weighted mean of the first size neighbours found.
+     */
+    private double mean(double values[], int size) {
+        double sum = 0, total = 0;
+        for (int j = 0; j < size; j++) {
+            double weight = weight(j);
+            sum += values[foundAt[j]] * weight;
+            total += weight;
+        }
+        return total > 0 ? sum / total : 0;
+    }
+
+    private double weight(int j) {
+        return weighting == INVERSE ? 1 / (converted[j] + 0.001) : weighting == SIMILARITY ? 1 - converted[j] : 1;
+    }
+
+    /*
+     * How many of the neighbours found IBk keeps for k: the first k and any
+     * tied with the last of them.
+     */
+    private int prune(int k) {
+        for (int j = k; j < count; j++) {
+            if (converted[j] != converted[j - 1]) {
+                return j;
+            }
+        }
+        return count;
+    }
+
+    /*
+     * One IBk over the shared features with its own class values and k-d
+     * tree. The tree is an implicit one over tree[]: each range's middle
+     * entry splits it on axis[middle].
+     */
+    private class Stage {
+
+        private double values[];
+        private int size;
+        private int k;
+        private boolean kValid = false;
+        private int tree[] = new int[0];
+        private int axis[] = new int[0];
+        private boolean built = false;
+
+        private Stage(double values[]) {
+            this.values = values;
+            size = n;
+            k = kUpper;
+        }
+
+        private void grow(double values[], int size) {
+            this.values = values;
+            this.size = size;
+            built = false;
+        }
+
+        private int k() {
+            select();
+            return k;
+        }
+
+        private double predict() {
+            select();
+            find(k, -1);
+            return mean(values, convert());
+        }
+
+        private int convert() {
+            for (int j = 0; j < count; j++) {
+                double d = Math.sqrt(found[j]);
+                converted[j] = Math.sqrt(d * d / dims);
+            }
+            return count;
+        }
+
+        /*
+         * IBk's hold-one-out choice of k, against the training ranges.
+         */
+        private void select() {
+
+            if (kValid) {
+                return;
+            }
+            k = kUpper;
+            kValid = true;
+            if (!crossValidate || size == 0) {
+                return;
+            }
+
+            double saved[][] = new double[2][dims];
+            System.arraycopy(min, 0, saved[0], 0, dims);
+            System.arraycopy(max, 0, saved[1], 0, dims);
+            double savedTarget[] = target.clone();
+            trainingRanges();
+            rescale();
+
+            double error[] = new double[kUpper];
+            for (int i = 0; i < size; i++) {
+                copyRow(i);
+                find(kUpper, i);
+                convert();
+                double sum = 0, total = 0;
+                for (int j = 0, used = 0; j < kUpper; j++) {
+                    for (int size = prune(j + 1); used < size; used++) {
+                        double weight = weight(used);
+                        sum += values[foundAt[used]] * weight;
+                        total += weight;
+                    }
+                    double diff = (total > 0 ? sum / total : 0) - values[i];
+                    error[j] += meanSquared ? diff * diff : Math.abs(diff);
+                }
+            }
+
+            double best = Double.NaN;
+            for (int j = 0; j < kUpper; j++) {
+                if (Double.isNaN(best) || best > error[j]) {
+                    best = error[j];
+                    k = j + 1;
+                }
+            }
+
+            System.arraycopy(saved[0], 0, min, 0, dims);
+            System.arraycopy(saved[1], 0, max, 0, dims);
+            rescale();
+            System.arraycopy(savedTarget, 0, target, 0, dims);
+        }
+
+        /*
+         * The k nearest rows to query, row skip left out, into found.
+         */
+        private void find(int k, int skip) {
+            if (!built) {
+                build();
+            }
+            count = 0;
+            Arrays.fill(offset, 0);
+            search(k, skip, 0, size, 0);
+        }
+
+        /*
+         * Searches tree[lo..hi), a cell at least reach (squared) from query.
+         * The far side of a split is searched only if it can still hold a
+         * row no farther than the k-th found, counting how far the query is
+         * from the cell on every axis, not just the one split on.
+         */
+        private void search(int k, int skip, int lo, int hi, double reach) {
+
+            if (lo >= hi) {
+                return;
+            }
+
+            int mid = (lo + hi) >>> 1;
+            int p = tree[mid];
+            if (p != skip) {
+                offer(p, distance(p), k);
+            }
+            if (dims == 0) {
+                search(k, skip, lo, mid, reach);
+                search(k, skip, mid + 1, hi, reach);
+                return;
+            }
+
+            int a = axis[mid];
+            double diff = target[a] - scaled[a][p];
+            boolean left = diff < 0;
+            search(k, skip, left ? lo : mid + 1, left ? mid : hi, reach);
+
+            double old = offset[a];
+            double farReach = reach - old * old + diff * diff;
+            if (count < k || farReach <= found[k - 1]) {
+                offset[a] = diff;
+                search(k, skip, left ? mid + 1 : lo, left ? hi : mid, farReach);
+                offset[a] = old;
+            }
+        }
+
+        private void build() {
+            if (tree.length < size) {
+                tree = new int[y.length];
+                axis = new int[y.length];
+            }
+            for (int i = 0; i < size; i++) {
+                tree[i] = i;
+            }
+            split(0, size);
+            built = true;
+        }
+
+        private void split(int lo, int hi) {
+
+            if (hi - lo <= 1 || dims == 0) {
+                return;
+            }
+
+            int best = 0;
+            double widest = -1;
+            for (int a = 0; a < dims; a++) {
+                double lowest = Double.POSITIVE_INFINITY, highest = Double.NEGATIVE_INFINITY;
+                double width = max[a] - min[a];
+                for (int i = lo; i < hi; i++) {
+                    lowest = Math.min(lowest, x[a][tree[i]]);
+                    highest = Math.max(highest, x[a][tree[i]]);
+                }
+                double spread = width > 0 ? (highest - lowest) / width : highest - lowest;
+                if (spread > widest) {
+                    widest = spread;
+                    best = a;
+                }
+            }
+
+            int mid = (lo + hi) >>> 1;
+            select(x[best], lo, hi - 1, mid);
+            axis[mid] = best;
+            split(lo, mid);
+            split(mid + 1, hi);
+        }
+
+        /*
+         * Quickselect: tree[lo..hi] rearranged so tree[nth] holds the row
+         * whose coordinate ranks there and no row before it is larger.
+         */
+        private void select(double coordinate[], int lo, int hi, int nth) {
+            while (lo < hi) {
+                double pivot = coordinate[tree[(lo + hi) >>> 1]];
+                int i = lo, j = hi;
+                while (i <= j) {
+                    while (coordinate[tree[i]] < pivot) {
+                        i++;
+                    }
+                    while (coordinate[tree[j]] > pivot) {
+                        j--;
+                    }
+                    if (i <= j) {
+                        int t = tree[i];
+                        tree[i++] = tree[j];
+                        tree[j--] = t;
+                    }
+                }
+                if (nth <= j) {
+                    hi = j;
+                } else if (nth >= i) {
+                    lo = i;
+                } else {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import org.apache.commons.math3.stat.regression.SimpleRegression;
+
+/*
+ * application_lab without the process: slave0 sends every task over the
+ * shared cable to the workers in turn, each worker computes what it gets and
+ * the run ends when the last task is done. The master sends one task at a
+ * time and a send starts only once its worker has finished the previous
+ * task, so the events can be replayed in order with one clock for the master
+ * and one ready time per worker. Each transfer crosses the cable twice, up
+ * and down, at 125MBps.
+ *
+ * Hosts draw idle power for the whole run plus busy minus idle while they
+ * compute, as watt_per_state says; cooling is a fixed multiple of that. Time
+ * and CPU energy go through linear fits against recorded results when
+ * simgrid.engine.calibration names a csv: sink file; the cooling ratio
+ * defaults to the one in trainingData.csv.
+ */
+public class MasterWorkerEngine {
+
+    private static final double MASTER_IDLE = 60; //slave0 never computes
+    private static final double BANDWIDTH = 125e6;
+    private static final double COMM_SIZE = 125e6;
+
+    private final double speed[]; //flop/s of the platform's hosts, in platform order
+    private final double idle[];
+    private final double busy[];
+    private final int mapSizeMB;
+
+    private double timeIntercept = 0, timeSlope = 1;
+    private double cpuIntercept = 0, cpuSlope = 1;
+    private double acRatio = 1.3783;
+
+    public MasterWorkerEngine(HostCatalog speeds, int order[], boolean scaled, int mapSizeMB) {
+        this.mapSizeMB = mapSizeMB;
+        speed = new double[order.length];
+        idle = new double[order.length];
+        busy = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            int h = speeds.indexOf(order[i]);
+            double mflops = scaled ? Math.round(speeds.getSpeed(h) * speeds.getFlops(h)) : speeds.getFlops(h);
+            speed[i] = mflops * 1e6;
+            idle[i] = speeds.getAlpha(h);
+            busy[i] = speeds.getBeta(h);
+        }
+    }
+
+    /*
+     * The engine the system properties ask for, calibrated if they name a
+     * file to calibrate against.
+     */
+    public static MasterWorkerEngine open(HostCatalog speeds, int order[], boolean scaled, int mapSizeMB) throws Exception {
+        MasterWorkerEngine engine = new MasterWorkerEngine(speeds, order, scaled, mapSizeMB);
+        String recorded = System.getProperty("simgrid.engine.calibration");
+        if (recorded != null) {
+            engine.calibrate(new File(recorded));
+        }
+        return engine;
+    }
+
+    /*
+     * The result application_lab would print for a deployment of task tasks
+     * on the first machines hosts.
+     */
+    public SimulationResult run(int machines, int task) {
+        return run(machines, task, mapSizeMB);
+    }
+
+    public SimulationResult run(int machines, int task, int mapSizeMB) {
+
+        double raw[] = simulate(machines, task, mapSizeMB);
+        double time = timeIntercept + timeSlope * raw[0];
+        double cpuEnergy = cpuIntercept + cpuSlope * raw[1];
+        double acEnergy = acRatio * cpuEnergy;
+        double workload = (double) task * mapSizeMB;
+
+        return new SimulationResult(workload, machines, cpuEnergy, acEnergy, time,
+                String.format("%.0f,%d,%.4f,%.4f,%.4f", workload, machines, cpuEnergy, acEnergy, time));
+    }
+
+    /*
+     * Fits time, CPU energy and the cooling ratio to the rows of a csv:
+     * sink file, comparing each with an uncalibrated run of the same
+     * deployment. Rows for more machines than the platform has are skipped.
+     */
+    public void calibrate(File recorded) throws Exception {
+
+        SimpleRegression time = new SimpleRegression();
+        SimpleRegression cpu = new SimpleRegression();
+        double cpuSum = 0, acSum = 0;
+
+        try (BufferedReader br = new BufferedReader(new FileReader(recorded))) {
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                if (line.trim().isEmpty() || line.startsWith(SimulationResult.COLUMNS[0])) {
+                    continue;
+                }
+                SimulationResult result = SimulationResult.parse(line);
+                int task = (int) Math.round(result.getWorkload() / mapSizeMB);
+                if (result.getMachines() < 1 || result.getMachines() > speed.length || task < 1) {
+                    continue;
+                }
+
+                double raw[] = simulate(result.getMachines(), task, mapSizeMB);
+                time.addData(raw[0], result.getTime());
+                cpu.addData(raw[1], result.getCpuEnergy());
+                cpuSum += result.getCpuEnergy();
+                acSum += result.getAcEnergy();
+            }
+        }
+
+        if (time.getN() < 2) {
+            throw new Exception("too few usable results in " + recorded + " to calibrate");
+        }
+
+        timeIntercept = time.getIntercept();
+        timeSlope = time.getSlope();
+        cpuIntercept = cpu.getIntercept();
+        cpuSlope = cpu.getSlope();
+        if (cpuSum > 0) {
+            acRatio = acSum / cpuSum;
+        }
+        System.err.printf("engine calibrated on %d results: time r2 %.4f, cpu energy r2 %.4f%n", time.getN(), time.getRSquare(), cpu.getRSquare());
+    }
+
+    /*
+     * Uncalibrated makespan and CPU energy. Each task carries task * mapSizeMB
+     * MFlop, as editDeploymentFile sets it up.
+     */
+    private double[] simulate(int machines, int task, int mapSizeMB) {
+
+        double compSize = (double) task * mapSizeMB * 1e6;
+        double transfer = 2 * COMM_SIZE / BANDWIDTH;
+        double ready[] = new double[machines];
+        double computing[] = new double[machines];
+
+        double clock = 0;
+        for (int i = 0; i < task; i++) {
+            int w = i % machines;
+            clock = Math.max(clock, ready[w]) + transfer;
+            double compute = compSize / speed[w];
+            ready[w] = clock + compute;
+            computing[w] += compute;
+        }
+
+        double end = clock;
+        for (int w = 0; w < machines; w++) {
+            end = Math.max(end, ready[w]);
+        }
+
+        double energy = MASTER_IDLE * end;
+        for (int w = 0; w < machines; w++) {
+            energy += idle[w] * end + (busy[w] - idle[w]) * computing[w];
+        }
+
+        return new double[]{end, energy};
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Process-wide counters, histograms and phase timers, keyed by name. With
+ * -Dsimgrid.metrics=FILE a snapshot of all of them replaces FILE every
+ * simgrid.metrics.period seconds (default 10) and once more at exit. Phases
+ * are also committed as PhaseEvent to JFR when the JVM has it, so they show
+ * up in any flight recording; -Dsimgrid.jfr=false turns that off.
+ */
+public class Metrics {
+
+    private static final ConcurrentSkipListMap<String, Object> registry = new ConcurrentSkipListMap<>();
+    private static final boolean jfr = !"false".equals(System.getProperty("simgrid.jfr")) && hasJfr();
+
+    static {
+        String file = System.getProperty("simgrid.metrics");
+        if (file != null) {
+            File out = new File(file).getAbsoluteFile();
+            long period = Long.getLong("simgrid.metrics.period", 10);
+            ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            dumper.scheduleAtFixedRate(() -> dump(out), period, period, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(out), "metrics-exit"));
+        }
+    }
+
+    public static Counter counter(String name) {
+        return (Counter) registry.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public static Histogram histogram(String name) {
+        return (Histogram) registry.computeIfAbsent(name, k -> new Histogram(1, ""));
+    }
+
+    /*
+     * A histogram of nanoseconds, reported in milliseconds.
+     */
+    public static Histogram timer(String name) {
+        return (Histogram) registry.computeIfAbsent(name, k -> new Histogram(1e-6, "ms"));
+    }
+
+    /*
+     * Runs body timed as name.
+     */
+    public static void time(String name, Body body) throws Exception {
+        Phase phase = new Phase(name);
+        try {
+            body.run();
+        } finally {
+            phase.close();
+        }
+    }
+
+    /*
+     * Runs body timed as name and returns what it returns.
+     */
+    public static <T> T time(String name, Call<T> body) throws Exception {
+        Phase phase = new Phase(name);
+        try {
+            return body.call();
+        } finally {
+            phase.close();
+        }
+    }
+
+    public interface Body {
+
+        void run() throws Exception;
+    }
+
+    public interface Call<T> {
+
+        T call() throws Exception;
+    }
+
+    public static String snapshot() {
+        StringWriter text = new StringWriter();
+        PrintWriter out = new PrintWriter(text);
+        for (Map.Entry<String, Object> metric : registry.entrySet()) {
+            out.println(metric.getKey() + " " + metric.getValue());
+        }
+        out.flush();
+        return text.toString();
+    }
+
+    /*
+     * Written beside file first and moved over it, so readers never see half
+     * a snapshot.
+     */
+    public static void dump(File file) {
+        try {
+            File tmp = new File(file.getPath() + ".tmp");
+            Files.write(tmp.toPath(), snapshot().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static boolean hasJfr() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (Throwable ex) {
+            return false;
+        }
+    }
+
+    public static class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + get();
+        }
+    }
+
+    /*
+     * Log-linear buckets: every power of two split into SUB equal slices, so
+     * percentiles are within 1/SUB of the recorded value. Non-negative
+     * values only.
+     */
+    public static class Histogram {
+
+        private static final int SUB = 16;
+
+        private final long buckets[] = new long[64 * SUB];
+        private final double scale;
+        private final String unit;
+        private long count = 0;
+        private long sum = 0;
+        private long max = 0;
+
+        Histogram(double scale, String unit) {
+            this.scale = scale;
+            this.unit = unit;
+        }
+
+        public synchronized void record(long value) {
+            value = Math.max(0, value);
+            buckets[bucket(value)]++;
+            count++;
+            sum += value;
+            max = Math.max(max, value);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getMean() {
+            return count == 0 ? 0 : (double) sum / count * scale;
+        }
+
+        public synchronized double getMax() {
+            return max * scale;
+        }
+
+        /*
+         * Upper edge of the bucket holding the p-th percentile, capped at the
+         * largest value seen.
+         */
+        public synchronized double percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * count)), seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b];
+                if (seen >= rank) {
+                    return Math.min(upper(b), max) * scale;
+                }
+            }
+            return max * scale;
+        }
+
+        private static int bucket(long value) {
+            if (value < SUB) {
+                return (int) value;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(value); //value in [2^exp, 2^(exp+1))
+            int slice = (int) ((value - (1L << exp)) >>> (exp - 4));
+            return (exp - 3) * SUB + slice;
+        }
+
+        private static long upper(int bucket) {
+            if (bucket < SUB) {
+                return bucket;
+            }
+            int exp = bucket / SUB + 3, slice = bucket % SUB;
+            return (1L << exp) + ((long) (slice + 1) << (exp - 4)) - 1;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("count=%d mean=%.3f%s p50=%.3f%s p95=%.3f%s p99=%.3f%s max=%.3f%s",
+                    count, getMean(), unit, percentile(50), unit, percentile(95), unit, percentile(99), unit, getMax(), unit);
+        }
+    }
+
+    /*
+     * One timed stretch of a thread's work.
+     */
+    private static class Phase {
+
+        private final String name;
+        private final long start;
+        private final Object event;
+
+        private Phase(String name) {
+            this.name = name;
+            event = jfr ? PhaseEvent.start(name) : null;
+            start = System.nanoTime();
+        }
+
+        private long elapsed() {
+            return System.nanoTime() - start;
+        }
+
+        private void close() {
+            timer(name).record(elapsed());
+            if (event != null) {
+                PhaseEvent.finish(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+public class MySqlTrainingData implements TrainingDataSource {
+
+    private final String url = "jdbc:mysql://localhost/simgrid";
+    private final HistoryWriter writer = new HistoryWriter(url + "?rewriteBatchedStatements=true",
+            Integer.getInteger("wekaml.history.queue", 10000),
+            Integer.getInteger("wekaml.history.batch", 100),
+            Long.getLong("wekaml.history.interval", 1000));
+
+    @Override
+    public Instances fetch(String[] query) throws Exception {
+
+        writer.flush();
+
+        try (Connection con = DriverManager.getConnection(url, "root", ""); Statement st = con.createStatement()) {
+
+            ResultSet rs = st.executeQuery("SELECT WorkLoad, NumOfMachines, " + query[1] + " FROM TrainingData");
+            ResultSetMetaData md = rs.getMetaData();
+            int columnCount = md.getColumnCount();
+
+            ArrayList<Attribute> attInfo = new ArrayList<>();
+            for (int i = 1; i <= columnCount; i++) {
+                attInfo.add(new Attribute(md.getColumnName(i)));
+            }
+
+            Instances dataSet = new Instances(query[0], attInfo, columnCount);
+            while (rs.next()) {
+                Instance inst = new DenseInstance(columnCount);
+                for (int i = 1; i <= columnCount; i++) {
+                    inst.setValue(i - 1, rs.getDouble(i));
+                }
+                dataSet.add(inst);
+            }
+
+            if (dataSet.classIndex() == -1) {
+                dataSet.setClassIndex(dataSet.numAttributes() - 1);
+            }
+
+            return dataSet;
+        }
+    }
+
+    @Override
+    public void append(double[] row) throws Exception {
+        writer.add(row);
+    }
+
+    @Override
+    public void close() throws Exception {
+        writer.close();
+    }
+}
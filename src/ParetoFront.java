@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/*
+ * The candidates no other candidate beats on CPU energy, cooling energy and
+ * response time at once, found in one pass over the candidates sorted by CPU
+ * energy: a candidate is on the front unless a front member found before it
+ * has no more cooling energy and no more response time. Any score that grows
+ * with all three, such as eptp with non-negative weights, is smallest
+ * somewhere on the front.
+ */
+public class ParetoFront {
+
+    private ParetoFront() {
+    }
+
+    /*
+     * Indexes of the front, in order of CPU energy.
+     */
+    public static int[] of(double cpuEnergy[], double acEnergy[], double responseTime[]) {
+
+        Integer order[] = new Integer[cpuEnergy.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Double.compare(cpuEnergy[a], cpuEnergy[b]);
+            if (c == 0) {
+                c = Double.compare(acEnergy[a], acEnergy[b]);
+            }
+            return c != 0 ? c : Double.compare(responseTime[a], responseTime[b]);
+        });
+
+        ArrayList<Integer> front = new ArrayList<>();
+        for (int i : order) {
+            boolean dominated = false;
+            for (int f : front) {
+                if (acEnergy[f] <= acEnergy[i] && responseTime[f] <= responseTime[i]) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                front.add(i);
+            }
+        }
+
+        return front.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,30 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/*
+ * JFR view of a Metrics.Phase. Only Metrics touches this class, and only
+ * once it has found jdk.jfr, so JVMs without JFR never load it.
+ */
+@Name("SimGridJava.Phase")
+@Label("Phase")
+@Category("SimGridJava")
+@Description("One timed phase of a SimGridJava or WekaML decision")
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    static Object start(String phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.phase = phase;
+        event.begin();
+        return event;
+    }
+
+    static void finish(Object event) {
+        ((PhaseEvent) event).commit();
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+public class PlatformWriter {
+
+    private static final String PROLOG = "<?xml version='1.0'?>\n"
+            + "<!DOCTYPE platform SYSTEM \"http://simgrid.gforge.inria.fr/simgrid/simgrid.dtd\">\n"
+            + "<platform version=\"4.1\">\n";
+
+    private static final String MASTER = "\t\t<host id=\"slave0\" speed=\"500Mf\">"
+            + "<prop id=\"watt_per_state\" value=\"60:80\"/>"
+            + "<prop id=\"watt_off\" value=\"0\"/>"
+            + "</host>\n"
+            + "\t\t<host_link id=\"slave0\" up=\"cable\" down=\"cable\"/>\n";
+
+    private static final byte HEADER[] = (PROLOG
+            + "\t<zone id=\"AIRL\" routing=\"Cluster\">\n"
+            + "\t\t<link id=\"cable\" bandwidth=\"125MBps\" latency=\"0\"/>\n"
+            + MASTER).getBytes(StandardCharsets.UTF_8);
+
+    private static final String PRIVATE_BW = "1000GBps"; //compact clusters' private links, never the bottleneck
+
+    private static final byte TAIL[] = "\t</zone>\n</platform>".getBytes(StandardCharsets.UTF_8);
+
+    private final int ids[];
+    private final String speedOf[];
+    private final String wattOf[];
+    private final byte hosts[][];
+    private final long offsets[]; //file offset right after the first k hosts
+
+    private File lastFile;
+    private int lastCount = -1;
+
+    public PlatformWriter(HostCatalog speeds, int order[], boolean scaled) {
+        ids = order.clone();
+        speedOf = new String[order.length];
+        wattOf = new String[order.length];
+        hosts = new byte[order.length][];
+        offsets = new long[order.length + 1];
+        offsets[0] = HEADER.length;
+
+        for (int i = 0; i < order.length; i++) {
+            int m = order[i];
+            int h = speeds.indexOf(m);
+            speedOf[i] = scaled ? Math.round(speeds.getSpeed(h) * speeds.getFlops(h)) + "Mf" : speeds.getFlops(h) + "Mf";
+            wattOf[i] = speeds.getAlpha(h) + ":" + speeds.getBeta(h);
+            hosts[i] = ("\t\t<host id=\"slave" + m + "\" speed=\"" + speedOf[i] + "\">"
+                    + "<prop id=\"watt_per_state\" value=\"" + wattOf[i] + "\"/>"
+                    + "<prop id=\"watt_off\" value=\"0\"/>"
+                    + "</host>\n"
+                    + "\t\t<host_link id=\"slave" + m + "\" up=\"cable\" down=\"cable\"/>\n").getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + hosts[i].length;
+        }
+    }
+
+    public int size() {
+        return hosts.length;
+    }
+
+    public synchronized void write(File file, int numOfMachines) throws Exception {
+
+        if (numOfMachines > hosts.length) {
+            throw new Exception("only " + hosts.length + " hosts known, " + numOfMachines + " requested");
+        }
+
+        file = file.getAbsoluteFile();
+
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            int from;
+            long written = 0;
+            if (file.equals(lastFile) && ch.size() == offsets[lastCount] + TAIL.length) {
+                from = Math.min(lastCount, numOfMachines);
+                ch.position(offsets[from]);
+            } else {
+                from = 0;
+                ch.position(0);
+                writeFully(ch, ByteBuffer.wrap(HEADER));
+                written = HEADER.length;
+            }
+
+            ByteBuffer buffers[] = new ByteBuffer[numOfMachines - from + 1];
+            for (int i = from; i < numOfMachines; i++) {
+                buffers[i - from] = ByteBuffer.wrap(hosts[i]);
+            }
+            buffers[buffers.length - 1] = ByteBuffer.wrap(TAIL);
+
+            long remaining = offsets[numOfMachines] - offsets[from] + TAIL.length;
+            written += remaining;
+            while (remaining > 0) {
+                remaining -= ch.write(buffers);
+            }
+
+            ch.truncate(offsets[numOfMachines] + TAIL.length);
+            Metrics.counter("simgrid.xml.bytes").add(written);
+        } catch (Exception ex) {
+            lastFile = null;
+            throw ex;
+        }
+
+        lastFile = file;
+        lastCount = numOfMachines;
+    }
+
+    /*
+     * Hosts sharing speed and power profile become one <cluster> behind its
+     * own router, a host with a profile of its own a cluster of one. Every
+     * cluster reaches slave0 through the shared cable, so a transfer still
+     * crosses the cable twice as in the expanded platform. A cluster cannot
+     * do without private links, so each host's is a fat pipe far faster than
+     * the cable: it never limits a transfer, every transfer has one, and the
+     * cable stays the only link they contend on.
+     */
+    public void writeCompact(File file, int numOfMachines) throws Exception {
+
+        if (numOfMachines > hosts.length) {
+            throw new Exception("only " + hosts.length + " hosts known, " + numOfMachines + " requested");
+        }
+
+        LinkedHashMap<String, ArrayList<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < numOfMachines; i++) {
+            String key = speedOf[i] + "|" + wattOf[i];
+            ArrayList<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
+
+        StringBuilder clusterXML = new StringBuilder();
+        StringBuilder routeXML = new StringBuilder();
+
+        int c = 0;
+        for (ArrayList<Integer> group : groups.values()) {
+            int first = group.get(0);
+            int members[] = new int[group.size()];
+            for (int j = 0; j < members.length; j++) {
+                members[j] = ids[group.get(j)];
+            }
+
+            String id = "group" + c++;
+            clusterXML.append("\t<cluster id=\"").append(id).append("\" prefix=\"slave\" suffix=\"\" radical=\"").append(radical(members))
+                    .append("\" speed=\"").append(speedOf[first]).append("\" bw=\"" + PRIVATE_BW + "\" lat=\"0\" sharing_policy=\"FATPIPE\" router_id=\"").append(id).append("_router\">")
+                    .append("<prop id=\"watt_per_state\" value=\"").append(wattOf[first]).append("\"/>")
+                    .append("<prop id=\"watt_off\" value=\"0\"/>")
+                    .append("</cluster>\n");
+            routeXML.append("\t<zoneRoute src=\"AIRL\" dst=\"").append(id).append("\" gw_src=\"AIRL_router\" gw_dst=\"").append(id).append("_router\">")
+                    .append("<link_ctn id=\"cable\"/>")
+                    .append("</zoneRoute>\n");
+        }
+
+        String dataXML = PROLOG
+                + "<zone id=\"world\" routing=\"Floyd\">\n"
+                + "\t<link id=\"cable\" bandwidth=\"125MBps\" latency=\"0\"/>\n"
+                + "\t<zone id=\"AIRL\" routing=\"Cluster\">\n"
+                + "\t\t<router id=\"AIRL_router\"/>\n"
+                + MASTER
+                + "\t</zone>\n"
+                + clusterXML
+                + routeXML
+                + "</zone>\n"
+                + "</platform>";
+
+        byte data[] = dataXML.getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), data);
+        Metrics.counter("simgrid.xml.bytes").add(data.length);
+
+        synchronized (this) {
+            if (file.getAbsoluteFile().equals(lastFile)) {
+                lastFile = null;
+            }
+        }
+    }
+
+    static String radical(int members[]) {
+        int sorted[] = members.clone();
+        Arrays.sort(sorted);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < sorted.length; i++) {
+            int j = i;
+            while (j + 1 < sorted.length && sorted[j + 1] == sorted[j] + 1) {
+                j++;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(sorted[i]);
+            if (j > i) {
+                sb.append('-').append(sorted[j]);
+            }
+            i = j;
+        }
+        return sb.toString();
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buffer) throws Exception {
+        while (buffer.hasRemaining()) {
+            ch.write(buffer);
+        }
+    }
+}
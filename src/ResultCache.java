@@ -0,0 +1,161 @@
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Simulation results keyed by a SHA-256 of the simulator path, size and
+ * modification time and the exact platform and deployment files it would
+ * read, so rebuilding the simulator leaves the old results unused. It is
+ * off unless -Dsimgrid.cache=true or simgrid.cache.dir is set, since a hit
+ * skips a simulation run. The in-memory tier keeps the simgrid.cache.entries
+ * (default 4096) most recently used results. With -Dsimgrid.cache.dir=DIR
+ * results also go to DIR, one small file each, and the least recently used
+ * files are deleted once they take more than simgrid.cache.bytes (default
+ * 64 MB). Results that are stale for another reason, such as a changed
+ * SimGrid library, stay until DIR is emptied or removed.
+ * -Dsimgrid.cache=false turns both tiers off even with DIR set.
+ */
+public class ResultCache {
+
+    private static final String SUFFIX = ".result";
+
+    private final LinkedHashMap<String, SimulationResult> memory;
+    private final File dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> files = new LinkedHashMap<>(16, 0.75f, true); //on disk, least recently used first
+    private long bytes = 0;
+
+    public ResultCache(int entries, File dir, long maxBytes) throws Exception {
+
+        memory = new LinkedHashMap<String, SimulationResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SimulationResult> eldest) {
+                return size() > entries;
+            }
+        };
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+
+        if (dir != null) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new Exception("cannot create cache directory " + dir);
+            }
+            File old[] = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+            Arrays.sort(old, Comparator.comparingLong(File::lastModified));
+            for (File f : old) {
+                String key = f.getName().substring(0, f.getName().length() - SUFFIX.length());
+                files.put(key, f.length());
+                bytes += f.length();
+            }
+            evict();
+        }
+    }
+
+    /*
+     * Whether the system properties ask for a cache.
+     */
+    public static boolean enabled() {
+        String cache = System.getProperty("simgrid.cache");
+        return "true".equals(cache) || cache == null && System.getProperty("simgrid.cache.dir") != null;
+    }
+
+    /*
+     * The cache the system properties ask for, or null.
+     */
+    public static ResultCache open() throws Exception {
+        if (!enabled()) {
+            return null;
+        }
+        String dir = System.getProperty("simgrid.cache.dir");
+        return new ResultCache(Integer.getInteger("simgrid.cache.entries", 4096),
+                dir == null ? null : new File(dir), Long.getLong("simgrid.cache.bytes", 64L << 20));
+    }
+
+    public static String key(String simulator, File platform, File deployment) throws Exception {
+
+        File binary = new File(simulator);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(simulator.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update((binary.length() + ":" + binary.lastModified()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(Files.readAllBytes(platform.toPath()));
+        digest.update((byte) 0);
+        digest.update(Files.readAllBytes(deployment.toPath()));
+
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    public synchronized SimulationResult get(String key) {
+
+        SimulationResult result = memory.get(key);
+        if (result != null) {
+            Metrics.counter("simgrid.cache.hits").increment();
+            return result;
+        }
+
+        if (dir != null && files.get(key) != null) {
+            File f = new File(dir, key + SUFFIX);
+            try {
+                result = SimulationReader.parse(new StringReader(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8)));
+                f.setLastModified(System.currentTimeMillis());
+            } catch (Exception ex) {
+                result = null;
+            }
+            if (result != null) {
+                memory.put(key, result);
+                Metrics.counter("simgrid.cache.disk.hits").increment();
+                return result;
+            }
+            bytes -= files.remove(key);
+            f.delete();
+        }
+
+        Metrics.counter("simgrid.cache.misses").increment();
+        return null;
+    }
+
+    public synchronized void put(String key, SimulationResult result) {
+
+        memory.put(key, result);
+        if (dir == null || files.containsKey(key)) {
+            return;
+        }
+
+        byte data[] = (result.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            File tmp = new File(dir, key + ".tmp");
+            Files.write(tmp.toPath(), data);
+            Files.move(tmp.toPath(), new File(dir, key + SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            files.put(key, (long) data.length);
+            bytes += data.length;
+            evict();
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator(); bytes > maxBytes && it.hasNext();) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File(dir, eldest.getKey() + SUFFIX).delete();
+            bytes -= eldest.getValue();
+            it.remove();
+            Metrics.counter("simgrid.cache.evictions").increment();
+        }
+    }
+}
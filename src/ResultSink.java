@@ -0,0 +1,39 @@
+import java.io.File;
+
+/*
+ * Receives simulation results as they finish. Sweeps deliver from several
+ * threads, so implementations are thread-safe.
+ */
+public interface ResultSink {
+
+    void accept(SimulationResult result) throws Exception;
+
+    void close() throws Exception;
+
+    /*
+     * csv:FILE, columnar:FILE or store:LOG, the last appending training rows
+     * to a TrainingStore seeded from wekaml.source.file with LOG as its log.
+     */
+    static ResultSink forSpec(String spec, int numOfMachines) throws Exception {
+
+        int colon = spec.indexOf(':');
+        if (colon < 0) {
+            throw new Exception("result sink needs a file: " + spec);
+        }
+        File file = new File(spec.substring(colon + 1));
+
+        switch (spec.substring(0, colon)) {
+            case "csv":
+                return new CsvResultSink(file);
+            case "columnar":
+                return new ColumnarResultSink(file, Integer.getInteger("simgrid.sink.block", 1024));
+            case "store":
+                return new TrainingSink(TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), file),
+                        numOfMachines,
+                        Double.parseDouble(System.getProperty("simgrid.sink.thresTemp", "22")),
+                        Double.parseDouble(System.getProperty("simgrid.sink.envTemp", "25")));
+            default:
+                throw new Exception("unknown result sink " + spec);
+        }
+    }
+}
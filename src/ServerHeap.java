@@ -0,0 +1,83 @@
+/*
+ * Binary min-heap of server indices keyed by a double cost, ties broken by
+ * the lower index. Arrays are kept between uses and only grow.
+ */
+public class ServerHeap {
+
+    private int heap[] = new int[16];
+    private double cost[] = new double[16];
+    private int size = 0;
+
+    /*
+     * Heapifies servers 0..n-1 with the given costs in O(n).
+     */
+    public void reset(double costs[], int n) {
+        if (n > heap.length) {
+            heap = new int[n];
+            cost = new double[n];
+        }
+        System.arraycopy(costs, 0, cost, 0, n);
+        for (int i = 0; i < n; i++) {
+            heap[i] = i;
+        }
+        size = n;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public int poll() {
+        int top = heap[0];
+        heap[0] = heap[--size];
+        siftDown(0);
+        return top;
+    }
+
+    /*
+     * Writes the servers cheapest first into order and empties the heap.
+     */
+    public int[] drain(int order[]) {
+        if (order == null || order.length < size) {
+            order = new int[size];
+        }
+        for (int k = 0; !isEmpty(); k++) {
+            order[k] = poll();
+        }
+        return order;
+    }
+
+    private boolean less(int a, int b) {
+        return cost[a] < cost[b] || (cost[a] == cost[b] && a < b);
+    }
+
+    private void siftDown(int i) {
+        int server = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], server)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = server;
+    }
+}
@@ -2,89 +2,172 @@
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import org.apache.commons.io.IOUtils;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
 
 public class SimGridJava {
 
     private final int mapSizeMB = 128;
-    private final int numOfMachines = 3000;
+    private final String clusterPath = System.getProperty("simgrid.cluster"); //a ClusterFile in place of LabSetup
+    private final ClusterFile cluster = clusterPath != null ? ClusterFile.open(new File(clusterPath)) : null;
+    private final int numOfMachines = cluster != null ? cluster.getServers() : 3000;
+    private final int workloads[] = cluster != null ? cluster.workloads() : LabSetup.WORKLOAD;
     private final String platformLab = "platform_lab.xml";
     private final String deploymentLab = "deployment_lab.xml";
-    private final String simulatorPath = new File("").getAbsolutePath() + "/application_lab";
+    private final String simulatorPath = new File(System.getProperty("simgrid.simulator", "application_lab")).getAbsolutePath();
+    private final File sweepDir = new File("sweep");
+    private final int workers = Integer.getInteger("simgrid.workers", Runtime.getRuntime().availableProcessors());
+    private final boolean compactPlatform = "compact".equals(System.getProperty("simgrid.platform"));
+    private final int trainWorkload[] = {/*5, 10, 50, 100, 500*/20000};
 
-    private final HashMap<Integer, Double[]> speeds = new HashMap<>();
+    private final HostCatalog speeds = new HostCatalog(numOfMachines);
     private final double arrivalRate = LabSetup.ARRIVAL_RATE / 1024;
     private final String method;
+    private final PlatformWriter platformWriter;
+    private final MasterWorkerEngine engine;
+    private final ResultCache cache = ResultCache.open();
+    private final ArrayList<ResultSink> sinks = new ArrayList<>();
+    private long after; //when the last gmc_test simulation ended
+
+    static final String PHASES[] = {"predict", "platform", "simulate", "update"};
 
     public SimGridJava(String method) throws Exception {
+        this(method, true);
+    }
+
+    /*
+     * With run false only the platform is set up, for harnesses that drive
+     * decide() themselves.
+     */
+    SimGridJava(String method, boolean run) throws Exception {
         this.method = method;
 
         if (this.method.equals("sunuwar")) {
-            speeds.putAll(new SunuwarUNL().getSpeeds());
+            speeds.putAll(sunuwar().getSpeeds());
+        } else if (cluster != null) {
+            for (int h = 0; h < cluster.getHosts(); h++) {
+                double alpha = cluster.getAlpha(h);
+                speeds.put(cluster.getId(h), 1.0, cluster.getFlops(cluster.getGroup(h)), alpha, alpha + cluster.getBeta(h));
+            }
         } else {
-            Double data[]; //speed, flop, alpha, beta
             for (int i = 0; i < LabSetup.FLOPS.length; i++) {
                 for (int j = 0; j < LabSetup.SERVER_GROUP[i].length; j++) {
-                    data = new Double[]{1.0, LabSetup.FLOPS[i], LabSetup1.ALPHAS[i][j], LabSetup1.ALPHAS[i][j] + LabSetup1.BETAS[i][j]};
-                    speeds.put(LabSetup.SERVER_GROUP[i][j], data);
+                    speeds.put(LabSetup.SERVER_GROUP[i][j], 1.0, LabSetup.FLOPS[i], LabSetup1.ALPHAS[i][j], LabSetup1.ALPHAS[i][j] + LabSetup1.BETAS[i][j]);
                 }
             }
         }
 
+        int order[] = new int[numOfMachines];
+        for (int i = 0; i < numOfMachines; i++) {
+            order[i] = this.method.equals("sunuwar") ? i + 1 : cluster != null ? cluster.getServer(i) : LabSetup.SERVERS[i];
+        }
+        platformWriter = new PlatformWriter(speeds, order, this.method.equals("sunuwar"));
+        engine = "engine".equals(System.getProperty("simgrid.backend"))
+                ? MasterWorkerEngine.open(speeds, order, this.method.equals("sunuwar"), mapSizeMB) : null;
+
+        if (!run) {
+            return;
+        }
+
+        String sinkSpecs = System.getProperty("simgrid.sinks");
+        try {
+            if (sinkSpecs != null) {
+                for (String spec : sinkSpecs.split(",")) {
+                    sinks.add(ResultSink.forSpec(spec.trim(), numOfMachines - 1)); //same count as WekaML
+                }
+            }
+            run();
+        } finally {
+            for (ResultSink sink : sinks) {
+                sink.close();
+            }
+        }
+    }
+
+    private void run() throws Exception {
+
+        String trace = System.getProperty("simgrid.trace");
+        if (trace != null) {
+            replay(new File(trace));
+            return;
+        }
+
         switch (this.method) {
             case "sunuwar":
                 editPlatformFile(numOfMachines);
-                for (int w = 0; w < LabSetup.WORKLOAD.length; w++) {
-                    editDeploymentFile(LabSetup.WORKLOAD[w]);
-                    String output = runSimulator();
-                    System.out.print(arrivalRate + "," + (w + 1) + "," + output);
+                for (int w = 0; w < workloads.length; w++) {
+                    editDeploymentFile(workloads[w]);
+                    SimulationResult output = runSimulator(numOfMachines, workloads[w]);
+                    System.out.println(arrivalRate + "," + (w + 1) + "," + output);
                 }
                 break;
             case "static":
                 editPlatformFile(numOfMachines);
-                for (int w = 0; w < LabSetup.WORKLOAD.length; w++) {
-                    editDeploymentFile(LabSetup.WORKLOAD[w]);
-                    String output = runSimulator();
-                    System.out.print(arrivalRate + "," + (w + 1) + "," + output);
+                for (int w = 0; w < workloads.length; w++) {
+                    editDeploymentFile(workloads[w]);
+                    SimulationResult output = runSimulator(numOfMachines, workloads[w]);
+                    System.out.println(arrivalRate + "," + (w + 1) + "," + output);
                 }
                 break;
             case "gmc_train":
-                int workload[] = {/*5, 10, 50, 100, 500*/20000};
                 for (int m = 2; m <= numOfMachines; m++) {
                     editPlatformFile(m);
-                    for (int w = 0; w < workload.length; w++) {
-                        editDeploymentFile(workload[w]);
-                        String output = runSimulator();
-                        System.out.print(arrivalRate + "," + (w + 1) + "," + output);
+                    for (int w = 0; w < trainWorkload.length; w++) {
+                        editDeploymentFile(trainWorkload[w]);
+                        SimulationResult output = runSimulator(m, trainWorkload[w]);
+                        System.out.println(arrivalRate + "," + (w + 1) + "," + output);
+                    }
+                }
+                break;
+            case "gmc_train_parallel":
+                ExecutorService pool = Executors.newFixedThreadPool(workers);
+                try {
+                    ArrayList<Future<SimulationResult>> results = new ArrayList<>();
+                    for (int m = 2; m <= numOfMachines; m++) {
+                        for (int w = 0; w < trainWorkload.length; w++) {
+                            results.add(pool.submit(sweepRun(m, trainWorkload[w])));
+                        }
                     }
+
+                    int r = 0;
+                    for (int m = 2; m <= numOfMachines; m++) {
+                        for (int w = 0; w < trainWorkload.length; w++) {
+                            SimulationResult output = results.get(r++).get();
+                            System.out.println(arrivalRate + "," + (w + 1) + "," + output);
+                        }
+                    }
+                } finally {
+                    pool.shutdownNow();
                 }
                 break;
+            case "gmc_train_adaptive":
+                trainAdaptive();
+                break;
             case "gmc_test":
                 WekaML gmc = new WekaML(numOfMachines, "eptp");
-                long after = System.currentTimeMillis(),
-                 before;
-                for (int i = 0; i < 3; i++) {
-                    for (int w = 0; w < LabSetup.WORKLOAD.length; w++) {
-                        ArrayList<Double> optimumConfig = gmc.runWekaML(LabSetup.WORKLOAD[w] * mapSizeMB);
-                        System.out.println((w + 1) + "," + optimumConfig);
-
-                        int m = (int) Math.round(optimumConfig.get(1));
-                        editPlatformFile(m);
-                        editDeploymentFile(LabSetup.WORKLOAD[w]);
-
-                        before = System.currentTimeMillis() - after;
-                        String output = runSimulator();
-                        after = System.currentTimeMillis();
-
-                        System.out.print(before + "," + (w + 1) + "," + output);
-
-                        double thresTemp = optimumConfig.get(5);
-                        double envTemp = optimumConfig.get(6);
-                        gmc.updateHistory(output, thresTemp, envTemp);
+                after = System.currentTimeMillis();
+                File cwd = new File("").getAbsoluteFile();
+                if (Boolean.getBoolean("simgrid.pipeline") && gmc.getWeights() == null) {
+                    int schedule[] = new int[3 * workloads.length];
+                    for (int i = 0; i < schedule.length; i++) {
+                        schedule[i] = i % workloads.length;
+                    }
+                    new DecisionPipeline(this, gmc, cwd).run(schedule, System.out);
+                } else {
+                    for (int i = 0; i < 3; i++) {
+                        for (int w = 0; w < workloads.length; w++) {
+                            decide(gmc, w, cwd, new long[PHASES.length], System.out);
+                        }
                     }
                 }
+                gmc.close();
                 break;
             default:
                 System.out.println("no suitable method found");
@@ -93,48 +176,303 @@ public class SimGridJava {
 
     }
 
-    private void editPlatformFile(int numOfMachines) throws Exception {
+    /*
+     * gmc_test, static or sunuwar over the jobs of a trace instead of
+     * the fixed workloads, each started when it arrives: at trace time divided
+     * by simgrid.trace.speed (default 1, real time; 0 runs jobs back to
+     * back). Jobs are read through a buffer of simgrid.trace.buffer jobs
+     * (default 1024), so reading waits when decisions fall behind. How late
+     * each job starts goes to the simgrid.trace.lag timer and a summary to
+     * stderr at the end.
+     */
+    private void replay(File trace) throws Exception {
 
-        String dataXML = "<?xml version='1.0'?>\n"
-                + "<!DOCTYPE platform SYSTEM \"http://simgrid.gforge.inria.fr/simgrid/simgrid.dtd\">\n"
-                + "<platform version=\"4.1\">\n"
-                + "\t<zone id=\"AIRL\" routing=\"Cluster\">\n"
-                + "\t\t<link id=\"cable\" bandwidth=\"125MBps\" latency=\"0\"/>\n"
-                + "\t\t<host id=\"slave0\" speed=\"500Mf\">"
-                + "<prop id=\"watt_per_state\" value=\"60:80\"/>"
-                + "<prop id=\"watt_off\" value=\"0\"/>"
-                + "</host>\n"
-                + "\t\t<host_link id=\"slave0\" up=\"cable\" down=\"cable\"/>\n";
-
-        if (method.equals("sunuwar")) {
-            for (int i = 1; i <= numOfMachines; i++) {
-                Double[] data = speeds.get(i);
-                dataXML += "\t\t<host id=\"slave" + i + "\" speed=\"" + Math.round(data[0] * data[1]) + "Mf\">"
-                        + "<prop id=\"watt_per_state\" value=\"" + data[2] + ":" + data[3] + "\"/>"
-                        + "<prop id=\"watt_off\" value=\"0\"/>"
-                        + "</host>\n"
-                        + "\t\t<host_link id=\"slave" + i + "\" up=\"cable\" down=\"cable\"/>\n";
+        double speed = Double.parseDouble(System.getProperty("simgrid.trace.speed", "1"));
+        int bufferSize = Integer.getInteger("simgrid.trace.buffer", 1024);
+
+        WekaML gmc = null;
+        switch (this.method) {
+            case "gmc_test":
+                gmc = new WekaML(numOfMachines, "eptp");
+                break;
+            case "static":
+            case "sunuwar":
+                editPlatformFile(numOfMachines);
+                break;
+            default:
+                System.out.println("no trace replay for " + this.method);
+                return;
+        }
+
+        Metrics.Histogram lag = Metrics.timer("simgrid.trace.lag");
+        File cwd = new File("").getAbsoluteFile();
+        int n = 0;
+        long start = System.nanoTime();
+        after = System.currentTimeMillis();
+        try (TraceReader jobs = new TraceReader(trace, mapSizeMB, bufferSize)) {
+            double first = 0;
+            for (TraceJob job = jobs.next(); job != null; job = jobs.next()) {
+                if (n++ == 0) {
+                    first = job.getArrival();
+                }
+
+                long late = 0;
+                if (speed > 0) {
+                    late = System.nanoTime() - start - (long) ((job.getArrival() - first) / speed * 1e9);
+                    if (late < 0) {
+                        Thread.sleep(-late / 1000000, (int) (-late % 1000000));
+                        late = 0;
+                    }
+                }
+                lag.record(late);
+
+                if (gmc != null) {
+                    decide(gmc, job, n, cwd, new long[PHASES.length], System.out);
+                } else {
+                    editDeploymentFile(new File(deploymentLab), job.getTasks(), job.getMapSizeMB());
+                    SimulationResult output = runSimulator(cwd, numOfMachines, job.getTasks(), job.getMapSizeMB());
+                    System.out.println(arrivalRate + "," + n + "," + output);
+                }
             }
-        } else {
-            for (int i = 0; i < numOfMachines; i++) {
-                int m = LabSetup.SERVERS[i];
-                Double[] data = speeds.get(m);
-                dataXML += "\t\t<host id=\"slave" + m + "\" speed=\"" + data[1] + "Mf\">"
-                        + "<prop id=\"watt_per_state\" value=\"" + data[2] + ":" + data[3] + "\"/>"
-                        + "<prop id=\"watt_off\" value=\"0\"/>"
-                        + "</host>\n"
-                        + "\t\t<host_link id=\"slave" + m + "\" up=\"cable\" down=\"cable\"/>\n";
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.err.printf("trace: %d jobs (%d lines skipped) in %.3f s, %.3f jobs/s; lag p50 %.3f ms, p99 %.3f ms, max %.3f ms%n",
+                    n, jobs.getSkipped(), seconds, n / seconds, lag.percentile(50), lag.percentile(99), lag.getMax());
+        } finally {
+            if (gmc != null) {
+                gmc.close();
             }
         }
+    }
 
-        dataXML += "\t</zone>\n</platform>";
+    /*
+     * gmc_train's output for the machine counts AdaptiveSampler picks, each
+     * batch simulated in parallel like gmc_train_parallel.
+     */
+    private void trainAdaptive() throws Exception {
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(platformLab))) {
-            bw.write(dataXML);
+        double thresTemp = Double.parseDouble(System.getProperty("simgrid.sink.thresTemp", "22"));
+        double envTemp = Double.parseDouble(System.getProperty("simgrid.sink.envTemp", "25"));
+
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        WekaML gmc = new WekaML(numOfMachines, "eptp", new TrainingStore());
+        try {
+            AdaptiveSampler sampler = new AdaptiveSampler(gmc, numOfMachines, trainWorkload, mapSizeMB, thresTemp, envTemp);
+            int sims = sampler.run((workload, machines) -> {
+                ArrayList<Future<SimulationResult>> results = new ArrayList<>();
+                for (int i = 0; i < machines.length; i++) {
+                    results.add(pool.submit(sweepRun(machines[i], trainWorkload[workload[i]])));
+                }
+
+                SimulationResult outputs[] = new SimulationResult[results.size()];
+                for (int i = 0; i < outputs.length; i++) {
+                    outputs[i] = results.get(i).get();
+                    System.out.println(arrivalRate + "," + (workload[i] + 1) + "," + outputs[i]);
+                }
+                return outputs;
+            });
+            System.err.println(sims + " of " + trainWorkload.length * (numOfMachines - 1) + " simulations run");
+        } finally {
+            gmc.close();
+            pool.shutdownNow();
         }
     }
 
+    /*
+     * One gmc_test decision for workloads[w], simulated in dir. The
+     * nanoseconds spent in each of PHASES go to phases; out, if not null,
+     * gets the usual gmc_test lines.
+     */
+    SimulationResult decide(WekaML gmc, int w, File dir, long phases[], PrintStream out) throws Exception {
+        return decide(gmc, job(w), w + 1, dir, phases, out);
+    }
+
+    /*
+     * The same for any job, printed as decision number n.
+     */
+    SimulationResult decide(WekaML gmc, TraceJob job, int n, File dir, long phases[], PrintStream out) throws Exception {
+
+        if (gmc.getWeights() != null) {
+            return decideWeighted(gmc, job, n, dir, phases, out);
+        }
+
+        long start = System.nanoTime();
+        double optimumConfig[] = predict(gmc, job);
+        if (out != null) {
+            out.println(n + "," + Arrays.toString(optimumConfig));
+        }
+
+        long predicted = System.nanoTime();
+        int m = prepare(dir, job, optimumConfig);
+
+        long written = System.nanoTime();
+        long before = idleMillis();
+        SimulationResult output = simulate(dir, job, m);
+        if (out != null) {
+            out.println(before + "," + n + "," + output);
+        }
+
+        long simulated = System.nanoTime();
+        update(gmc, optimumConfig, output);
+
+        phases[0] = predicted - start;
+        phases[1] = written - predicted;
+        phases[2] = simulated - written;
+        phases[3] = System.nanoTime() - simulated;
+        return output;
+    }
+
+    /*
+     * decide() under every weight vector of wekaml.weights from one
+     * prediction. Each vector's optimum and result are printed tagged with
+     * its weights, vectors that pick the same machine count share one
+     * simulation, and only the first vector's result goes into the history.
+     */
+    private SimulationResult decideWeighted(WekaML gmc, TraceJob job, int n, File dir, long phases[], PrintStream out) throws Exception {
+
+        long start = System.nanoTime();
+        double weights[][] = gmc.getWeights();
+        double optima[][] = gmc.runWekaML(job.getWorkload(), weights);
+
+        long predicted = System.nanoTime(), writing = 0, simulating = 0;
+        HashMap<Integer, SimulationResult> outputs = new HashMap<>();
+        for (int k = 0; k < weights.length; k++) {
+            String tag = weights[k][0] + ":" + weights[k][1];
+            if (out != null) {
+                out.println(n + "," + tag + "," + Arrays.toString(optima[k]));
+            }
+
+            int m = (int) Math.round(optima[k][CandidateTable.MACHINES]);
+            long before = idleMillis();
+            SimulationResult output = outputs.get(m);
+            if (output == null) {
+                long t = System.nanoTime();
+                prepare(dir, job, optima[k]);
+                writing += System.nanoTime() - t;
+
+                t = System.nanoTime();
+                output = simulate(dir, job, m);
+                simulating += System.nanoTime() - t;
+                outputs.put(m, output);
+            }
+            if (out != null) {
+                out.println(before + "," + n + "," + tag + "," + output);
+            }
+        }
+
+        long simulated = System.nanoTime();
+        SimulationResult output = outputs.get((int) Math.round(optima[0][CandidateTable.MACHINES]));
+        update(gmc, optima[0], output);
+
+        phases[0] = predicted - start;
+        phases[1] = writing;
+        phases[2] = simulating;
+        phases[3] = System.nanoTime() - simulated;
+        return output;
+    }
+
+    /*
+     * SunuwarUNL over the cluster file's hosts if there is one, LabSetup's
+     * otherwise.
+     */
+    private SunuwarUNL sunuwar() throws Exception {
+        if (cluster == null) {
+            return new SunuwarUNL();
+        }
+        return new SunuwarUNL(cluster.flops(), cluster.serverGroups(), cluster.alphas(), cluster.betas(), LabSetup.ARRIVAL_RATE);
+    }
+
+    /*
+     * workloads[w] as a job, with the default map size.
+     */
+    TraceJob job(int w) {
+        return new TraceJob(0, workloads[w], mapSizeMB);
+    }
+
+    double[] predict(WekaML gmc, TraceJob job) throws Exception {
+        return gmc.runWekaML(job.getWorkload());
+    }
+
+    /*
+     * Writes dir's platform and deployment for the machine count
+     * optimumConfig chose, and returns that count.
+     */
+    int prepare(File dir, TraceJob job, double optimumConfig[]) throws Exception {
+        int m = (int) Math.round(optimumConfig[CandidateTable.MACHINES]);
+        editPlatformFile(new File(dir, platformLab), m);
+        editDeploymentFile(new File(dir, deploymentLab), job.getTasks(), job.getMapSizeMB());
+        return m;
+    }
+
+    /*
+     * Milliseconds since the last simulate() returned.
+     */
+    long idleMillis() {
+        return System.currentTimeMillis() - after;
+    }
+
+    SimulationResult simulate(File dir, TraceJob job, int m) throws Exception {
+        SimulationResult output = runSimulator(dir, m, job.getTasks(), job.getMapSizeMB());
+        after = System.currentTimeMillis();
+        return output;
+    }
+
+    void update(WekaML gmc, double optimumConfig[], SimulationResult output) throws Exception {
+        double thresTemp = optimumConfig[CandidateTable.THRES_TEMP];
+        double envTemp = optimumConfig[CandidateTable.ENV_TEMP];
+        gmc.updateHistory(output, thresTemp, envTemp, optimumConfig);
+    }
+
+    private Callable<SimulationResult> sweepRun(int m, int task) {
+        return () -> {
+            if (engine != null) {
+                return runSimulator(sweepDir, m, task);
+            }
+
+            File dir = new File(sweepDir, m + "_" + task);
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new Exception("cannot create " + dir);
+            }
+
+            try {
+                editPlatformFile(new File(dir, platformLab), m);
+                editDeploymentFile(new File(dir, deploymentLab), task);
+                return runSimulator(dir, m, task);
+            } finally {
+                FileUtils.deleteQuietly(dir);
+            }
+        };
+    }
+
+    private void editPlatformFile(int numOfMachines) throws Exception {
+        editPlatformFile(new File(platformLab), numOfMachines);
+    }
+
+    private void editPlatformFile(File file, int numOfMachines) throws Exception {
+        if (engine != null) {
+            return;
+        }
+        Metrics.time("simgrid.platform", () -> {
+            if (compactPlatform) {
+                platformWriter.writeCompact(file, numOfMachines);
+            } else {
+                platformWriter.write(file, numOfMachines);
+            }
+        });
+    }
+
     private void editDeploymentFile(int task) throws Exception {
+        editDeploymentFile(new File(deploymentLab), task);
+    }
+
+    private void editDeploymentFile(File file, int task) throws Exception {
+        editDeploymentFile(file, task, mapSizeMB);
+    }
+
+    private void editDeploymentFile(File file, int task, int mapSizeMB) throws Exception {
+        if (engine != null) {
+            return;
+        }
 
         String dataXML = "<?xml version='1.0'?>\n"
                 + "<!DOCTYPE platform SYSTEM \"http://simgrid.gforge.inria.fr/simgrid/simgrid.dtd\">\n"
@@ -146,20 +484,66 @@ public class SimGridJava {
                 + "\t</actor>\n"
                 + "</platform>";
 
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter(deploymentLab))) {
-            bw.write(dataXML);
+        Metrics.time("simgrid.deployment", () -> {
+            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file))) {
+                bw.write(dataXML);
+            }
+        });
+        Metrics.counter("simgrid.xml.bytes").add(dataXML.length());
+    }
+
+    private SimulationResult runSimulator(int numOfMachines, int task) throws Exception {
+        return runSimulator(new File(""), numOfMachines, task);
+    }
+
+    /*
+     * Sinks get the result as soon as the run ends, before sweeps put their
+     * console output back in order. Cached results and the engine's are
+     * passed on as if application_lab had just produced them.
+     */
+    private SimulationResult runSimulator(File dir, int numOfMachines, int task) throws Exception {
+        return runSimulator(dir, numOfMachines, task, mapSizeMB);
+    }
+
+    private SimulationResult runSimulator(File dir, int numOfMachines, int task, int mapSizeMB) throws Exception {
+
+        SimulationResult result;
+        if (engine != null) {
+            result = Metrics.time("simgrid.engine", () -> engine.run(numOfMachines, task, mapSizeMB));
+        } else {
+            result = runApplication(dir.getAbsoluteFile());
+        }
+
+        for (ResultSink sink : sinks) {
+            sink.accept(result);
         }
+        return result;
     }
 
-    private String runSimulator() throws Exception {
-        Process pr = Runtime.getRuntime().exec(simulatorPath);
-        return IOUtils.toString(pr.getInputStream(), "UTF-8");
+    private SimulationResult runApplication(File dir) throws Exception {
+
+        String key = null;
+        SimulationResult result = null;
+        if (cache != null) {
+            key = ResultCache.key(simulatorPath, new File(dir, platformLab), new File(dir, deploymentLab));
+            result = cache.get(key);
+        }
+
+        if (result == null) {
+            Process pr = Metrics.time("simgrid.spawn", () -> new ProcessBuilder(simulatorPath).directory(dir).start());
+            result = Metrics.time("simgrid.simulate", () -> SimulationReader.read(pr));
+            Metrics.counter("simgrid.simulations").increment();
+            if (cache != null) {
+                cache.put(key, result);
+            }
+        }
+        return result;
     }
 
     public static void main(String[] args) {
 
         try {
-            new SimGridJava("gmc_train");
+            new SimGridJava(args.length > 0 ? args[0] : "gmc_train");
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Reads a SimulationResult straight off application_lab's stdout, a few
+ * characters at a time, while a daemon thread drains stderr so the simulator
+ * never blocks on a full pipe. Fields are separated by commas or line breaks
+ * and empty ones are skipped; whatever follows the fifth field is discarded.
+ */
+public class SimulationReader {
+
+    private static final boolean forwardErrors = Boolean.getBoolean("simgrid.stderr");
+
+    public static SimulationResult read(Process pr) throws Exception {
+
+        Thread errors = drain(pr.getErrorStream(), forwardErrors ? System.err : null);
+
+        SimulationResult result;
+        try (Reader in = new InputStreamReader(pr.getInputStream(), StandardCharsets.UTF_8)) {
+            result = parse(in);
+            char rest[] = new char[256];
+            while (in.read(rest) >= 0) {
+                //let the simulator finish writing
+            }
+        }
+
+        int exit = pr.waitFor();
+        errors.join();
+
+        if (result == null) {
+            throw new Exception("simulator exited with " + exit + " and no result");
+        }
+        return result;
+    }
+
+    /*
+     * The next result on in, or null if in ends first.
+     */
+    public static SimulationResult parse(Reader in) throws IOException {
+
+        double fields[] = new double[SimulationResult.COLUMNS.length];
+        int n = 0;
+        StringBuilder text = new StringBuilder(64);
+        StringBuilder token = new StringBuilder(32);
+
+        while (n < fields.length) {
+            int c = in.read();
+            if (c < 0 || c == ',' || c == '\n' || c == '\r') {
+                String value = token.toString().trim();
+                token.setLength(0);
+                if (!value.isEmpty()) {
+                    fields[n++] = Double.parseDouble(value);
+                }
+                if (c < 0) {
+                    break;
+                }
+            } else {
+                token.append((char) c);
+            }
+            if (n < fields.length && c >= 0) {
+                text.append((char) c);
+            }
+        }
+
+        if (n < fields.length) {
+            return null;
+        }
+
+        return new SimulationResult(fields[0], (int) Math.round(fields[1]), fields[2], fields[3], fields[4], text.toString().trim());
+    }
+
+    private static Thread drain(InputStream in, OutputStream out) {
+
+        Thread t = new Thread(() -> {
+            byte buffer[] = new byte[4096];
+            try {
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    if (out != null) {
+                        out.write(buffer, 0, read);
+                    }
+                }
+            } catch (IOException ex) {
+                //process went away
+            }
+        }, "simulator-stderr");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * One run of application_lab: the task count it was given, the machines it
+ * ran on, the CPU and cooling energy it used and how long it took. text is
+ * the simulator's own output for the run, echoed to the console as before.
+ */
+public class SimulationResult {
+
+    public static final String COLUMNS[] = {"workload", "machines", "cpuEnergy", "acEnergy", "time"};
+
+    private final double workload;
+    private final int machines;
+    private final double cpuEnergy;
+    private final double acEnergy;
+    private final double time;
+    private final String text;
+
+    public SimulationResult(double workload, int machines, double cpuEnergy, double acEnergy, double time, String text) {
+        this.workload = workload;
+        this.machines = machines;
+        this.cpuEnergy = cpuEnergy;
+        this.acEnergy = acEnergy;
+        this.time = time;
+        this.text = text;
+    }
+
+    /*
+     * Parses "workload,machines,cpuEnergy,acEnergy,time", the way the output
+     * used to be split.
+     */
+    public static SimulationResult parse(String data) throws Exception {
+
+        String output[] = data.split(",");
+        if (output.length < COLUMNS.length) {
+            throw new Exception("not a simulation result: " + data);
+        }
+
+        return new SimulationResult(Double.valueOf(output[0]), (int) Math.round(Double.valueOf(output[1])),
+                Double.valueOf(output[2]), Double.valueOf(output[3]), Double.valueOf(output[4]), data.trim());
+    }
+
+    public double getWorkload() {
+        return workload;
+    }
+
+    public int getMachines() {
+        return machines;
+    }
+
+    public double getCpuEnergy() {
+        return cpuEnergy;
+    }
+
+    public double getAcEnergy() {
+        return acEnergy;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public double get(int column) {
+        switch (column) {
+            case 0:
+                return workload;
+            case 1:
+                return machines;
+            case 2:
+                return cpuEnergy;
+            case 3:
+                return acEnergy;
+            default:
+                return time;
+        }
+    }
+
+    /*
+     * A TrainingDataSource row. Energy becomes average power and the machines
+     * left idle out of numOfMachines add 5 W of CPU and 1 W of cooling each.
+     */
+    public double[] toTrainingRow(int numOfMachines, double thresTemp, double envTemp) {
+        double cpu = cpuEnergy / time + (numOfMachines - machines) * 5;
+        double ac = acEnergy / time + (numOfMachines - machines) * 1;
+        return new double[]{workload, machines, time, cpu, thresTemp, envTemp, ac};
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -1,155 +1,524 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class SunuwarUNL {
 
     private final double utilMin = 30;
     private final double utilMax = 100;
 
-    private final double arrivalRate = LabSetup.ARRIVAL_RATE;
+    private double arrivalRate;
+    private double maxPower = 0; //every server at utilMax
     private double minPower = 0;
-
-    private final int numOfGroups = LabSetup.FLOPS.length;
-    private final ArrayList<double[]> powerCoEff[] = new ArrayList[numOfGroups];
-
-    private final double groupUtilLow[] = new double[numOfGroups];
-    private final double groupUtilHigh[] = new double[numOfGroups];
-    private final double groupUtilTemp[] = new double[numOfGroups];
-    private final double groupUtilFinal[] = new double[numOfGroups];
-
-    private final double throughputCoEff[] = new double[numOfGroups];
+    private boolean feasible = false;
+
+    private final int numOfGroups;
+    private final int serverGroup[][];
+    private final double flops[];
+    private final double alpha[][];
+    private final double beta[][];
+
+    private final int order[][]; //servers of each group, lowest alpha first
+    private final double prefixAlpha[][]; //sum of the k lowest alphas of each group
+    private final double basePower[]; //every server of the group at utilMin
+
+    /* convex hull pieces of every group's power above utilMin, cheapest first */
+    private final int segGroup[];
+    private final double segThroughput[];
+    private final double segPower[];
+
+    private final double groupUtilLow[];
+    private final double groupUtilHigh[];
+    private final double capacityLow[]; //throughput of groups below i at utilMin
+    private final double capacityHigh[]; //and at utilMax
+    private final List<Map<Long, Memo>> memo;
+    private final double groupUtilTemp[];
+    private final double groupUtilFinal[];
+
+    private final double throughputCoEff[];
     private final ArrayList<double[]> serverUtil = new ArrayList<>();
-    private final HashMap<Integer, Double[]> speeds = new HashMap<>();
+    private final HostCatalog speeds;
+
+    private final boolean parallel = Boolean.getBoolean("sunuwar.parallel");
+    private final int forkDepth = Integer.getInteger("sunuwar.forkDepth", 6);
+    private static final double KEY_QUANTUM = 1e-9; //of the arrival rate, far below any two distinct served sums
 
     public SunuwarUNL() throws Exception {
+        this(LabSetup.FLOPS, LabSetup.SERVER_GROUP, LabSetup1.ALPHAS, LabSetup1.BETAS, LabSetup.ARRIVAL_RATE);
+    }
 
+    public SunuwarUNL(double flops[], int serverGroup[][], double alphas[][], double betas[][], double arrivalRate) throws Exception {
+
+        numOfGroups = flops.length;
+        this.serverGroup = serverGroup;
+        this.flops = flops;
+
+        alpha = new double[numOfGroups][];
+        beta = new double[numOfGroups][];
+        order = new int[numOfGroups][];
+        prefixAlpha = new double[numOfGroups][];
+        basePower = new double[numOfGroups];
+        throughputCoEff = new double[numOfGroups];
+
+        groupUtilLow = new double[numOfGroups];
+        groupUtilHigh = new double[numOfGroups];
+        capacityLow = new double[numOfGroups];
+        capacityHigh = new double[numOfGroups];
+        memo = new ArrayList<>(Collections.nCopies(numOfGroups, null));
+        groupUtilTemp = new double[numOfGroups];
+        groupUtilFinal = new double[numOfGroups];
+
+        int servers = 0;
+        ServerHeap heap = new ServerHeap();
         for (int i = 0; i < numOfGroups; i++) {
-            powerCoEff[i] = new ArrayList<>();
-            for (int j = 0; j < LabSetup.SERVER_GROUP[i].length; j++) {
-                powerCoEff[i].add(new double[]{LabSetup1.ALPHAS[i][j], LabSetup1.BETAS[i][j]});
+            int n = serverGroup[i].length;
+            servers += n;
+
+            alpha[i] = Arrays.copyOf(alphas[i], n);
+            beta[i] = Arrays.copyOf(betas[i], n);
+
+            heap.reset(alpha[i], n);
+            order[i] = heap.drain(new int[n]);
+            serverUtil.add(new double[n]);
+
+            prefixAlpha[i] = new double[n + 1];
+            double sumBeta = 0;
+            for (int j = 0; j < n; j++) {
+                prefixAlpha[i][j + 1] = prefixAlpha[i][j] + alpha[i][order[i][j]];
+                sumBeta += beta[i][j];
             }
+            basePower[i] = prefixAlpha[i][n] * utilMin / 100 + sumBeta;
+
+            throughputCoEff[i] = flops[i] / 10;
         }
 
-        throughputCoEff[0] = LabSetup.FLOPS[0] / 10;
-        throughputCoEff[1] = LabSetup.FLOPS[1] / 10;
-        throughputCoEff[2] = LabSetup.FLOPS[2] / 10;
+        ArrayList<double[]> segments = new ArrayList<>();
+        for (int i = 0; i < numOfGroups; i++) {
+            hull(i, segments);
+        }
+        segments.sort((a, b) -> Double.compare(a[2] / a[1], b[2] / b[1]));
+        segGroup = new int[segments.size()];
+        segThroughput = new double[segments.size()];
+        segPower = new double[segments.size()];
+        for (int k = 0; k < segments.size(); k++) {
+            segGroup[k] = (int) segments.get(k)[0];
+            segThroughput[k] = segments.get(k)[1];
+            segPower[k] = segments.get(k)[2];
+        }
 
         initialize();
 
-        findGroupUtilization(numOfGroups - 1);
+        speeds = new HostCatalog(servers);
+        resolve(arrivalRate);
+
+//        for (int i = 1; i <= speeds.size(); i++) {
+//            System.out.println(i + Arrays.toString(speeds.get(i)));
+//        }
+    }
+
+    /*
+     * Solves again for a new arrival rate and returns the servers whose speed
+     * changed. The previous group utilization, moved onto the new rate, bounds
+     * the search from the start; if no leaf of the new search reaches that
+     * bound it is searched again from maxPower, so the answer is always the
+     * one a fresh solver would give. On failure the old solution is kept.
+     */
+    public HostCatalog resolve(double arrivalRate) throws Exception {
+
+        double oldRate = this.arrivalRate, oldPower = minPower;
+        double oldFinal[] = groupUtilFinal.clone();
+        boolean solved = feasible;
+
+        this.arrivalRate = arrivalRate;
+        double warm = solved ? warmStart(oldFinal) : maxPower;
+
+        search(warm);
+        if (!feasible && warm < maxPower) {
+            search(maxPower);
+        }
+
+        if (!feasible) {
+            this.arrivalRate = oldRate;
+            minPower = oldPower;
+            feasible = solved;
+            System.arraycopy(oldFinal, 0, groupUtilFinal, 0, numOfGroups);
+            throw new Exception("not a feasible solution");
+        }
 
         System.arraycopy(groupUtilFinal, 0, groupUtilTemp, 0, numOfGroups);
 
         for (int i = 0; i < numOfGroups; i++) {
-            serverUtil.add(utilDistribute(i));
+            utilDistribute(i);
         }
 
-        Double data[]; //speed, flop, alpha, beta
+        HostCatalog changed = new HostCatalog(16);
         for (int i = 0; i < numOfGroups; i++) {
-            for (int j = 0; j < LabSetup.SERVER_GROUP[i].length; j++) {
-                data = new Double[]{serverUtil.get(i)[j] / 100, LabSetup.FLOPS[i], LabSetup1.ALPHAS[i][j], LabSetup1.ALPHAS[i][j] + LabSetup1.BETAS[i][j]};
-                speeds.put(LabSetup.SERVER_GROUP[i][j], data);
+            for (int j = 0; j < serverGroup[i].length; j++) {
+                int id = serverGroup[i][j], k = speeds.indexOf(id);
+                double speed = serverUtil.get(i)[j] / 100;
+                if (k < 0 || speeds.getSpeed(k) != speed) {
+                    speeds.put(id, speed, flops[i], alpha[i][j], alpha[i][j] + beta[i][j]);
+                    changed.put(id, speed, flops[i], alpha[i][j], alpha[i][j] + beta[i][j]);
+                }
             }
         }
-
-//        for (int i = 1; i <= speeds.size(); i++) {
-//            System.out.println(i + Arrays.toString(speeds.get(i)));
-//        }
+        return changed;
     }
 
-    public HashMap<Integer, Double[]> getSpeeds() {
+    public HostCatalog getSpeeds() {
         return speeds;
     }
 
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    public double getMinPower() {
+        return minPower;
+    }
+
+    public double[] getGroupUtilization() {
+        return groupUtilFinal.clone();
+    }
+
     private void initialize() throws Exception {
         for (int i = 0; i < numOfGroups; i++) {
-            for (int j = 0; j < powerCoEff[i].size(); j++) {
-                minPower += powerCoEff[i].get(j)[0] * utilMax / 100 + powerCoEff[i].get(j)[1];
+            maxPower += prefixAlpha[i][alpha[i].length] * utilMax / 100;
+            for (int j = 0; j < beta[i].length; j++) {
+                maxPower += beta[i][j];
             }
         }
 
         for (int i = 0; i < numOfGroups; i++) {
-            groupUtilLow[i] = powerCoEff[i].size() * utilMin;
-            groupUtilHigh[i] = powerCoEff[i].size() * utilMax;
-            groupUtilTemp[i] = 0;
+            groupUtilLow[i] = alpha[i].length * utilMin;
+            groupUtilHigh[i] = alpha[i].length * utilMax;
+        }
+
+        for (int i = 1; i < numOfGroups; i++) {
+            capacityLow[i] = capacityLow[i - 1] + throughputCoEff[i - 1] * groupUtilLow[i - 1];
+            capacityHigh[i] = capacityHigh[i - 1] + throughputCoEff[i - 1] * groupUtilHigh[i - 1];
         }
 
     }
 
-    private void findGroupUtilization(int i) throws Exception {
+    private void search(double bound) {
+
+        feasible = false;
+        for (int i = 0; i < numOfGroups; i++) {
+            memo.set(i, parallel ? new ConcurrentHashMap<>() : new HashMap<>());
+        }
 
-        if (i > 0) {
+        double util[] = new double[numOfGroups];
+        double power = parallel && numOfGroups > 1
+                ? ForkJoinPool.commonPool().invoke(new Subtree(numOfGroups - 1, 0, bound, util, forkDepth))
+                : findGroupUtilization(numOfGroups - 1, 0, bound, util);
 
-            double left = powerCoEff[i].size() * utilMin;
+        if (power <= bound) {
+            minPower = power;
+            feasible = true;
+            System.arraycopy(util, 0, groupUtilFinal, 0, numOfGroups);
+        }
 
-            double right = arrivalRate;
-            for (int j = 0; j < i; j++) {
-                right -= throughputCoEff[j] * groupUtilHigh[j];
+        Collections.fill(memo, null);
+    }
+
+    /*
+     * Power of the previous solution with group 0 taking up the change in
+     * arrival rate, or maxPower if that no longer fits.
+     */
+    private double warmStart(double previous[]) {
+
+        double util = arrivalRate;
+        for (int j = 1; j < numOfGroups; j++) {
+            util -= throughputCoEff[j] * previous[j];
+        }
+        util = Math.round(util / throughputCoEff[0]);
+
+        if (util < groupUtilLow[0] || util > groupUtilHigh[0]) {
+            return maxPower;
+        }
+
+        double power = groupPower(0, util);
+        for (int j = 1; j < numOfGroups; j++) {
+            power += groupPower(j, previous[j]);
+        }
+        return Math.min(power, maxPower);
+    }
+
+    /*
+     * Groups numOfGroups-1 down to i+1 are fixed and serve served; group i
+     * takes its rounded low or high utilization, the groups below are bounded
+     * by their full capacity and group 0 carries the rest. Returns the lowest
+     * power of groups 0..i, writing their utilization into util, or infinity
+     * if nothing reaches limit.
+     *
+     * Equal powers go to the larger utilization of group i, the leaf a plain
+     * depth-first search would reach last. The result only depends on i and
+     * served, so it is remembered per level: a finished subtree is exact, one
+     * that found nothing holds for any lower limit. served is keyed rounded,
+     * so sums that differ only in the order they were added up meet.
+     */
+    private double findGroupUtilization(int i, double served, double limit, double util[]) {
+
+        double rest = arrivalRate - served;
+
+        if (i == 0) {
+            double u = Math.round(rest / throughputCoEff[0]);
+            if (u < groupUtilLow[0] || u > groupUtilHigh[0]) {
+                return Double.POSITIVE_INFINITY;
             }
-            for (int j = i + 1; j < numOfGroups; j++) {
-                right -= throughputCoEff[j] * groupUtilTemp[j];
+            double power = groupPower(0, u);
+            if (power > limit) {
+                return Double.POSITIVE_INFINITY;
             }
-            right /= throughputCoEff[i];
+            util[0] = u;
+            return power;
+        }
 
-            groupUtilLow[i] = (left > right) ? left : right;
+        Long key = Math.round(served / (arrivalRate * KEY_QUANTUM));
+        Memo known = memo.get(i).get(key);
+        if (known != null) {
+            if (known.util != null && known.power <= limit) {
+                System.arraycopy(known.util, 0, util, 0, i + 1);
+                return known.power;
+            }
+            if (known.util != null || limit <= known.limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+        }
 
-            left = powerCoEff[i].size() * utilMax;
+        double low = Math.round(low(i, rest)), high = Math.round(high(i, rest));
+        double lowBound = bound(i, low, rest), highBound = bound(i, high, rest);
+        double first = lowBound <= highBound ? low : high;
 
-            right = arrivalRate;
-            for (int j = 0; j < i; j++) {
-                right -= throughputCoEff[j] * groupUtilLow[j];
+        double best = Double.POSITIVE_INFINITY, bestUtil = 0;
+        double sub[] = new double[i], found[] = null;
+        for (double u : new double[]{first, first == low ? high : low}) {
+
+            if ((u == low ? lowBound : highBound) > limit || (found != null && u == bestUtil)) {
+                continue;
             }
-            for (int j = i + 1; j < numOfGroups; j++) {
-                right -= throughputCoEff[j] * groupUtilTemp[j];
+
+            double power = groupPower(i, u);
+            double below = findGroupUtilization(i - 1, served + throughputCoEff[i] * u, (limit - power) * (1 + 1e-12), sub);
+            double total = power + below;
+
+            if (total <= limit && (total < best || u > bestUtil)) {
+                best = total;
+                bestUtil = u;
+                found = sub.clone();
+                limit = total;
             }
-            right /= throughputCoEff[i];
+        }
 
-            groupUtilHigh[i] = (left < right) ? left : right;
+        if (found != null) {
+            System.arraycopy(found, 0, util, 0, i);
+            util[i] = bestUtil;
+            Memo done = new Memo();
+            done.power = best;
+            done.util = Arrays.copyOf(util, i + 1);
+            memo.get(i).put(key, done);
+        } else if (known == null || known.limit < limit) {
+            Memo none = new Memo();
+            none.limit = limit;
+            memo.get(i).put(key, none);
+        }
 
-            groupUtilTemp[i] = Math.round(groupUtilLow[i]);
-            findGroupUtilization(i - 1);
+        return best;
+    }
 
-            groupUtilTemp[i] = Math.round(groupUtilHigh[i]);
-            findGroupUtilization(i - 1);
+    /*
+     * Lowest power groups 0..i can reach with group i at util, or infinity if
+     * util is out of range.
+     */
+    private double bound(int i, double util, double rest) {
 
-        } else {
+        if (util < groupUtilLow[i] || util > groupUtilHigh[i]) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        return groupPower(i, util) + lowerBound(i, rest - throughputCoEff[i] * util);
+    }
+
+    private double low(int i, double rest) {
 
-            groupUtilTemp[i] = arrivalRate;
-            for (int j = 1; j < numOfGroups; j++) {
-                groupUtilTemp[i] -= throughputCoEff[j] * groupUtilTemp[j];
+        double left = alpha[i].length * utilMin;
+        double right = (rest - capacityHigh[i]) / throughputCoEff[i];
+
+        return (left > right) ? left : right;
+    }
+
+    private double high(int i, double rest) {
+
+        double left = alpha[i].length * utilMax;
+        double right = (rest - capacityLow[i]) / throughputCoEff[i];
+
+        return (left < right) ? left : right;
+    }
+
+    /*
+     * Power of a group at total utilization util when utilDistribute fills
+     * its cheapest servers to utilMax first: prefix sums make it O(1).
+     */
+    private double groupPower(int g, double util) {
+
+        int n = alpha[g].length;
+        double totalMin = n * utilMin;
+
+        if (util < totalMin) {
+            return basePower[g];
+        }
+
+        int m = (int) Math.min(n, Math.floor((util - totalMin) / (utilMax - utilMin)));
+        double power = basePower[g] + (prefixAlpha[g][m] * (utilMax - utilMin)) / 100;
+        if (m < n) {
+            double partial = util - m * utilMax - (n - m - 1) * utilMin;
+            power += alpha[g][order[g][m]] * (partial - utilMin) / 100;
+        }
+        return power;
+    }
+
+    /*
+     * Groups below i still have to serve rest. Each costs at least its
+     * basePower, and above utilMin no less than the convex hull of its power
+     * curve, so filling rest from the cheapest hull pieces first is a lower
+     * bound. Rounding may shift half a unit per group.
+     */
+    private double lowerBound(int i, double rest) {
+
+        double bound = 0;
+        for (int j = 0; j < i; j++) {
+            bound += basePower[j];
+            rest -= throughputCoEff[j] * (alpha[j].length * utilMin + 0.5);
+        }
+
+        for (int k = 0; k < segGroup.length && rest > 0; k++) {
+            if (segGroup[k] >= i) {
+                continue;
             }
-            groupUtilTemp[i] = Math.round(groupUtilTemp[i] / throughputCoEff[i]);
-
-            if (groupUtilTemp[i] < groupUtilLow[i] || groupUtilTemp[i] > groupUtilHigh[i]) {
-                throw new Exception("not a feasible solution");
-            } else {
-
-                double power = 0;
-                for (int j = 0; j < numOfGroups; j++) {
-                    double[] util = utilDistribute(j);
-                    for (int k = 0; k < powerCoEff[j].size(); k++) {
-                        power += powerCoEff[j].get(k)[0] * util[k] / 100 + powerCoEff[j].get(k)[1];
-                    }
+            double extra = Math.min(rest, segThroughput[k]);
+            bound += segPower[k] * extra / segThroughput[k];
+            rest -= extra;
+        }
+
+        return rest > 1e-9 * arrivalRate ? Double.POSITIVE_INFINITY : bound * (1 - 1e-12);
+    }
+
+    /*
+     * Lower convex hull of the points (k servers at utilMax, their power
+     * above utilMin), one piece {group, throughput, power} per hull edge.
+     */
+    private void hull(int g, ArrayList<double[]> segments) {
+
+        int n = alpha[g].length;
+        int stack[] = new int[n + 1];
+        int top = 0;
+        for (int k = 0; k <= n; k++) {
+            while (top >= 2) {
+                int a = stack[top - 2], b = stack[top - 1];
+                double cross = (b - a) * (prefixAlpha[g][k] - prefixAlpha[g][a]) - (k - a) * (prefixAlpha[g][b] - prefixAlpha[g][a]);
+                if (cross > 0) {
+                    break;
                 }
+                top--;
+            }
+            stack[top++] = k;
+        }
+
+        for (int s = 1; s < top; s++) {
+            int a = stack[s - 1], b = stack[s];
+            segments.add(new double[]{g,
+                (b - a) * (utilMax - utilMin) * throughputCoEff[g],
+                (prefixAlpha[g][b] - prefixAlpha[g][a]) * (utilMax - utilMin) / 100});
+        }
+    }
+
+    private static class Memo {
+
+        private double limit;
+        private double power;
+        private double util[];
+    }
+
+    /*
+     * The top forkDepth levels search both branches at once, each with the
+     * limit of the parent; below that it is findGroupUtilization.
+     */
+    private class Subtree extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int i;
+        private final double served;
+        private final double limit;
+        private final double util[];
+        private final int depth;
+
+        Subtree(int i, double served, double limit, double util[], int depth) {
+            this.i = i;
+            this.served = served;
+            this.limit = limit;
+            this.util = util;
+            this.depth = depth;
+        }
 
-                if (power <= minPower) {
-                    minPower = power;
-                    System.arraycopy(groupUtilTemp, 0, groupUtilFinal, 0, numOfGroups);
+        @Override
+        protected Double compute() {
+
+            if (depth == 0 || i == 0) {
+                return findGroupUtilization(i, served, limit, util);
+            }
+
+            double rest = arrivalRate - served;
+            double low = Math.round(low(i, rest)), high = Math.round(high(i, rest));
+
+            ArrayList<Subtree> tasks = new ArrayList<>();
+            ArrayList<Double> utils = new ArrayList<>();
+            for (double u : low == high ? new double[]{low} : new double[]{low, high}) {
+                if (bound(i, u, rest) <= limit) {
+                    double power = groupPower(i, u);
+                    tasks.add(new Subtree(i - 1, served + throughputCoEff[i] * u, (limit - power) * (1 + 1e-12), new double[i], depth - 1));
+                    utils.add(u);
+                }
+            }
+            invokeAll(tasks);
+
+            double best = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < tasks.size(); k++) {
+                double u = utils.get(k);
+                double total = groupPower(i, u) + tasks.get(k).join();
+                if (total <= limit && total <= best) {
+                    best = total;
+                    System.arraycopy(tasks.get(k).util, 0, util, 0, i);
+                    util[i] = u;
                 }
             }
+            return best;
         }
     }
 
+    /*
+     * Every server draws alpha * util / 100 + beta, so the marginal cost of
+     * utilization is alpha / 100: servers are raised to utilMax lowest alpha
+     * first, one takes the remainder and the rest stay at utilMin. Writes
+     * into the group's serverUtil array.
+     */
     private double[] utilDistribute(int groupIndex) throws Exception {
 
         double utilTemp = groupUtilTemp[groupIndex];
 
-        double util[] = new double[powerCoEff[groupIndex].size()];
+        double util[] = serverUtil.get(groupIndex);
+        int cheapest[] = order[groupIndex];
 
-        double totalMin = powerCoEff[groupIndex].size() * utilMin;
-        double totalMax = powerCoEff[groupIndex].size() * utilMax;
+        double totalMin = util.length * utilMin;
+        double totalMax = util.length * utilMax;
 
         if (utilTemp > totalMax) {
             throw new Exception("Error value for util");
@@ -158,13 +527,13 @@ public class SunuwarUNL {
         } else {
 
             double m = Math.floor((utilTemp - totalMin) / (utilMax - utilMin));
-            for (int i = 1; i <= powerCoEff[groupIndex].size(); i++) {
+            for (int i = 1; i <= util.length; i++) {
                 if (i <= m) {
-                    util[i - 1] = utilMax;
+                    util[cheapest[i - 1]] = utilMax;
                 } else if (i > m + 1) {
-                    util[i - 1] = utilMin;
+                    util[cheapest[i - 1]] = utilMin;
                 } else {
-                    util[i - 1] = utilTemp - m * utilMax - (powerCoEff[groupIndex].size() - m - 1) * utilMin;
+                    util[cheapest[i - 1]] = utilTemp - m * utilMax - (util.length - m - 1) * utilMin;
                 }
             }
         }
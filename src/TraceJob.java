@@ -0,0 +1,35 @@
+/*
+ * One job to decide for: when it arrives, in seconds on the trace's own
+ * clock, how many tasks it has and how many MB of map input each carries.
+ */
+public class TraceJob {
+
+    private final double arrival;
+    private final int tasks;
+    private final int mapSizeMB;
+
+    public TraceJob(double arrival, int tasks, int mapSizeMB) {
+        this.arrival = arrival;
+        this.tasks = tasks;
+        this.mapSizeMB = mapSizeMB;
+    }
+
+    public double getArrival() {
+        return arrival;
+    }
+
+    public int getTasks() {
+        return tasks;
+    }
+
+    public int getMapSizeMB() {
+        return mapSizeMB;
+    }
+
+    /*
+     * MB of map input in all, what WekaML calls the workload.
+     */
+    public double getWorkload() {
+        return (double) tasks * mapSizeMB;
+    }
+}
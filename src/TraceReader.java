@@ -0,0 +1,158 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Streams TraceJobs out of a file on a reader thread through a buffer of
+ * bounded size, so a slow consumer holds the reader back instead of the
+ * whole trace piling up in memory. Files ending in .jsonl or .json hold one
+ * flat JSON object per line; anything else is CSV with a header. Either way
+ * a job is read from its arrival time (arrival, timestamp or time, in
+ * seconds), its task count (tasks, task or workload) and optionally its map
+ * size (mapSizeMB or mapSize, defaultMapSizeMB if absent). Jobs without an
+ * arrival time arrive with the one before; lines without a task count are
+ * skipped and counted.
+ */
+public class TraceReader implements AutoCloseable {
+
+    private static final String ARRIVAL[] = {"arrival", "timestamp", "time"};
+    private static final String TASKS[] = {"tasks", "task", "workload"};
+    private static final String MAP_SIZE[] = {"mapSizeMB", "mapSize"};
+    private static final Object END = new Object();
+
+    private final File file;
+    private final int defaultMapSizeMB;
+    private final BlockingQueue<Object> buffer;
+    private final Thread reader;
+    private volatile long skipped = 0;
+    private boolean ended = false;
+
+    public TraceReader(File file, int defaultMapSizeMB, int bufferSize) {
+        this.file = file;
+        this.defaultMapSizeMB = defaultMapSizeMB;
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        reader = new Thread(this::read, "trace-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /*
+     * The next job, or null once the trace is done.
+     */
+    public TraceJob next() throws Exception {
+        if (ended) {
+            return null;
+        }
+        Object next = buffer.take();
+        if (next == END) {
+            ended = true;
+            return null;
+        }
+        if (next instanceof Exception) {
+            ended = true;
+            throw (Exception) next;
+        }
+        return (TraceJob) next;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    @Override
+    public void close() {
+        reader.interrupt();
+    }
+
+    private void read() {
+        try {
+            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                String name = file.getName();
+                if (name.endsWith(".jsonl") || name.endsWith(".json")) {
+                    readJson(br);
+                } else {
+                    readCsv(br);
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (Exception ex) {
+                buffer.put(ex);
+                return;
+            }
+            buffer.put(END);
+        } catch (InterruptedException ex) {
+            //closed while the buffer was full
+        }
+    }
+
+    private void readJson(BufferedReader br) throws Exception {
+
+        Pattern arrival = field(ARRIVAL), tasks = field(TASKS), mapSize = field(MAP_SIZE);
+        double last = 0;
+
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            Matcher t = tasks.matcher(line);
+            if (!t.find()) {
+                skip(line);
+                continue;
+            }
+            Matcher a = arrival.matcher(line), s = mapSize.matcher(line);
+            last = a.find() ? Double.parseDouble(a.group(2)) : last;
+            int size = s.find() ? (int) Math.round(Double.parseDouble(s.group(2))) : defaultMapSizeMB;
+            buffer.put(new TraceJob(last, (int) Math.round(Double.parseDouble(t.group(2))), size));
+        }
+    }
+
+    private void readCsv(BufferedReader br) throws Exception {
+
+        String headerLine = br.readLine();
+        if (headerLine == null) {
+            return;
+        }
+        String header[] = headerLine.split(",");
+        int arrival = column(header, ARRIVAL), tasks = column(header, TASKS), mapSize = column(header, MAP_SIZE);
+        if (tasks < 0) {
+            throw new Exception(file + " has no task count column");
+        }
+        double last = 0;
+
+        for (String line = br.readLine(); line != null; line = br.readLine()) {
+            String values[] = line.split(",");
+            if (tasks >= values.length || values[tasks].trim().isEmpty()) {
+                skip(line);
+                continue;
+            }
+            if (arrival >= 0 && arrival < values.length && !values[arrival].trim().isEmpty()) {
+                last = Double.parseDouble(values[arrival].trim());
+            }
+            int size = mapSize >= 0 && mapSize < values.length && !values[mapSize].trim().isEmpty()
+                    ? (int) Math.round(Double.parseDouble(values[mapSize].trim())) : defaultMapSizeMB;
+            buffer.put(new TraceJob(last, (int) Math.round(Double.parseDouble(values[tasks].trim())), size));
+        }
+    }
+
+    private void skip(String line) {
+        if (!line.trim().isEmpty()) {
+            skipped++;
+        }
+    }
+
+    private static Pattern field(String names[]) {
+        return Pattern.compile("\"(" + String.join("|", names) + ")\"\\s*:\\s*\"?(-?[0-9.]+(?:[eE][-+]?[0-9]+)?)");
+    }
+
+    private static int column(String header[], String names[]) {
+        for (String name : names) {
+            for (int i = 0; i < header.length; i++) {
+                if (header[i].trim().equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+}
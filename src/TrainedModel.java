@@ -0,0 +1,253 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import weka.attributeSelection.ASEvaluation;
+import weka.attributeSelection.ASSearch;
+import weka.attributeSelection.AttributeSelection;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.lazy.IBk;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/*
+ * One learned model with its attribute subset, kept across decisions. New
+ * rows go straight into updateable learners; a full rebuild runs on the
+ * trainer thread every retrainRows rows or once the mean relative error on
+ * new rows exceeds driftThreshold, and the old model serves until it is done.
+ * IBk's hold-one-out choice of k (-X) is made by that rebuild and kept while
+ * rows are added, since making it again costs a pass over the whole history
+ * for every row. With knn set, IBk and AdditiveRegression over IBk are
+ * fitted as a KnnRegressor instead.
+ */
+class TrainedModel {
+
+    private static final int MIN_DRIFT_ROWS = 10;
+
+    private final String searchOptions[];
+    private final String evalOptions[];
+    private final String classifierSpec[];
+    private final int retrainRows;
+    private final double driftThreshold;
+    private final ExecutorService trainer;
+    private final boolean threadSafe;
+    private final boolean knn;
+
+    private Instances data;
+    private AttributeSelection selection;
+    private Classifier classifier;
+    private Classifier copies[];
+    private KnnRegressor regressor;
+
+    private int newRows = 0;
+    private int driftRows = 0;
+    private double driftSum = 0;
+    private Future<Build> pending;
+
+    TrainedModel(String searchOptions[], String evalOptions[], String classifierSpec[],
+            int retrainRows, double driftThreshold, ExecutorService trainer, boolean knn) {
+        this.searchOptions = searchOptions;
+        this.evalOptions = evalOptions;
+        this.classifierSpec = classifierSpec;
+        this.retrainRows = retrainRows;
+        this.driftThreshold = driftThreshold;
+        this.trainer = trainer;
+        threadSafe = !Arrays.asList(classifierSpec).contains("weka.classifiers.lazy.IBk");
+        this.knn = knn && KnnRegressor.forSpec(classifierSpec) != null;
+    }
+
+    boolean isTrained() {
+        return classifier != null || regressor != null;
+    }
+
+    Instances getData() {
+        return data;
+    }
+
+    Classifier getClassifier() {
+        return classifier;
+    }
+
+    /*
+     * The kNN model serving in place of the classifier, or null.
+     */
+    KnnRegressor getRegressor() {
+        return regressor;
+    }
+
+    /*
+     * Indexes into getData() of the attributes the model uses, class last.
+     */
+    int[] getSelected() throws Exception {
+        return selection.selectedAttributes();
+    }
+
+    /*
+     * One classifier per scoring thread. IBk keeps per-query search state and
+     * widens its normalisation ranges with every query, so models built on it
+     * are scored on copies taken fresh for each decision: every decision sees
+     * the model as trained, however the candidates are chunked. The others
+     * are shared read-only.
+     */
+    Classifier[] getClassifiers(int n) throws Exception {
+
+        if (threadSafe) {
+            Classifier shared[] = new Classifier[n];
+            Arrays.fill(shared, classifier);
+            return shared;
+        }
+
+        if (copies == null || copies.length < n) {
+            copies = AbstractClassifier.makeCopies(classifier, n);
+        }
+        return Arrays.copyOf(copies, n);
+    }
+
+    /*
+     * unlabeled cut down to the attributes the classifier was built on, when
+     * selection dropped any.
+     */
+    Instances reduce(Instances unlabeled) throws Exception {
+        if (selection.selectedAttributes().length == unlabeled.numAttributes()) {
+            return unlabeled;
+        }
+        return selection.reduceDimensionality(unlabeled);
+    }
+
+    void releaseCopies() {
+        copies = null;
+    }
+
+    void train(Instances instances) throws Exception {
+        data = instances;
+        swap(build(new Instances(data)));
+        newRows = 0;
+        driftRows = 0;
+        driftSum = 0;
+    }
+
+    /*
+     * Rebuilds from instances on the calling thread, dropping any rebuild
+     * still pending on the trainer thread.
+     */
+    void retrain(Instances instances) throws Exception {
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        train(instances);
+    }
+
+    void refresh() throws Exception {
+
+        if (pending == null || !pending.isDone()) {
+            return;
+        }
+
+        Build built = pending.get();
+        pending = null;
+        swap(built);
+
+        if (classifier instanceof UpdateableClassifier) {
+            for (int i = built.rows; i < data.numInstances(); i++) {
+                ((UpdateableClassifier) classifier).updateClassifier(selection.reduceDimensionality(data.instance(i)));
+            }
+        } else if (regressor != null && regressor.isUpdateable()) {
+            for (int i = built.rows; i < data.numInstances(); i++) {
+                regressor.add(selection.reduceDimensionality(data.instance(i)).toDoubleArray());
+            }
+        }
+    }
+
+    /*
+     * predicted is what the serving model said for this row when the decision
+     * was made, or NaN if it was not scored; only scored rows count for drift.
+     */
+    void add(Instance inst, double predicted) throws Exception {
+
+        inst.setDataset(data);
+
+        double actual = inst.classValue();
+        if (!Double.isNaN(predicted)) {
+            driftSum += Math.abs(predicted - actual) / Math.max(Math.abs(actual), 1e-9);
+            driftRows++;
+        }
+        newRows++;
+
+        data.add(inst);
+
+        if (classifier instanceof UpdateableClassifier) {
+            ((UpdateableClassifier) classifier).updateClassifier(selection.reduceDimensionality(data.lastInstance()));
+            copies = null;
+        } else if (regressor != null && regressor.isUpdateable()) {
+            regressor.add(selection.reduceDimensionality(data.lastInstance()).toDoubleArray());
+        }
+
+        boolean drifted = driftRows >= MIN_DRIFT_ROWS && driftSum / driftRows > driftThreshold;
+        if (pending == null && (newRows >= retrainRows || drifted)) {
+            Instances snapshot = new Instances(data);
+            pending = trainer.submit(() -> build(snapshot));
+            newRows = 0;
+            driftRows = 0;
+            driftSum = 0;
+        }
+    }
+
+    private void swap(Build built) {
+        selection = built.selection;
+        classifier = built.classifier;
+        regressor = built.regressor;
+        copies = null;
+    }
+
+    private Build build(Instances data) throws Exception {
+
+        Build built = new Build();
+        built.rows = data.numInstances();
+
+        Instances instances = Metrics.time("wekaml.select", () -> {
+            built.selection = new AttributeSelection();
+            ASSearch asSearch = ASSearch.forName("weka.attributeSelection.BestFirst", searchOptions.clone());
+            built.selection.setSearch(asSearch);
+            ASEvaluation asEval = ASEvaluation.forName("weka.attributeSelection.CfsSubsetEval", evalOptions.clone());
+            built.selection.setEvaluator(asEval);
+            built.selection.SelectAttributes(data);
+            return built.selection.reduceDimensionality(data);
+        });
+
+        Metrics.time("wekaml.build", () -> {
+            if (knn) {
+                double rows[][] = new double[instances.numInstances()][];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = instances.instance(i).toDoubleArray();
+                }
+                built.regressor = KnnRegressor.forSpec(classifierSpec);
+                built.regressor.fit(rows, instances.numAttributes() - 1);
+            } else {
+                String options[] = new String[classifierSpec.length - 1];
+                System.arraycopy(classifierSpec, 1, options, 0, options.length);
+                built.classifier = AbstractClassifier.forName(classifierSpec[0], options);
+                built.classifier.buildClassifier(instances);
+                if (built.classifier instanceof IBk && ((IBk) built.classifier).getCrossValidate() && instances.numInstances() > 0) {
+                    IBk ibk = (IBk) built.classifier;
+                    ibk.classifyInstance(instances.instance(0)); //the first query picks k
+                    int k = ibk.getKNN();
+                    ibk.setCrossValidate(false);
+                    ibk.setKNN(k);
+                }
+            }
+        });
+        Metrics.counter("wekaml.rebuilds").increment();
+
+        return built;
+    }
+
+    private static class Build {
+
+        private AttributeSelection selection;
+        private Classifier classifier;
+        private KnnRegressor regressor;
+        private int rows;
+    }
+}
@@ -0,0 +1,16 @@
+import weka.core.Instances;
+
+public interface TrainingDataSource {
+
+    String COLUMNS[] = {"WorkLoad", "NumOfMachines", "ResponseTime", "CPUPower", "ThresTemp", "EnvTemp", "ACPower"};
+
+    /*
+     * query is one of WekaML's features, e.g. {"rt", "ResponseTime"}: the
+     * relation name and the columns selected after WorkLoad and NumOfMachines.
+     */
+    Instances fetch(String query[]) throws Exception;
+
+    void append(double row[]) throws Exception;
+
+    void close() throws Exception;
+}
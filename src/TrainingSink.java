@@ -0,0 +1,28 @@
+/*
+ * Turns results into training rows for a TrainingDataSource. Sweeps do not
+ * decide on temperatures, so every row gets the same thresTemp and envTemp.
+ */
+public class TrainingSink implements ResultSink {
+
+    private final TrainingDataSource source;
+    private final int numOfMachines;
+    private final double thresTemp;
+    private final double envTemp;
+
+    public TrainingSink(TrainingDataSource source, int numOfMachines, double thresTemp, double envTemp) {
+        this.source = source;
+        this.numOfMachines = numOfMachines;
+        this.thresTemp = thresTemp;
+        this.envTemp = envTemp;
+    }
+
+    @Override
+    public synchronized void accept(SimulationResult result) throws Exception {
+        source.append(result.toTrainingRow(numOfMachines, thresTemp, envTemp));
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        source.close();
+    }
+}
@@ -0,0 +1,234 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+/*
+ * In-memory training data kept as one double[] per column. Rows can be
+ * seeded from trainingData.csv style files or the simgrid.sql dump and are
+ * optionally mirrored to a memory-mapped append log: a row count followed by
+ * the rows, COLUMNS.length doubles each.
+ */
+public class TrainingStore implements TrainingDataSource {
+
+    private static final int ROW_BYTES = COLUMNS.length * 8;
+    private static final int LOG_HEADER = 8;
+    private static final long LOG_CHUNK = 1 << 20;
+
+    private double columns[][] = new double[COLUMNS.length][1024];
+    private int size = 0;
+
+    private FileChannel log;
+    private MappedByteBuffer logBuffer;
+
+    public static TrainingStore open(File seed, File log) throws Exception {
+
+        TrainingStore store = new TrainingStore();
+        if (log == null || log.length() <= LOG_HEADER) {
+            if (seed.getName().endsWith(".sql")) {
+                store.loadSql(seed);
+            } else {
+                store.loadCsv(seed);
+            }
+        }
+        if (log != null) {
+            store.openLog(log);
+        }
+        return store;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized double get(int row, int column) {
+        return columns[column][row];
+    }
+
+    /*
+     * Files are joined row by row, so rt.csv, cpu.csv and ac.csv loaded
+     * together give the same rows as trainingData.csv.
+     */
+    public synchronized void loadCsv(File... files) throws Exception {
+
+        int base = size;
+        for (File file : files) {
+            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+
+                String header[] = br.readLine().split(",");
+                int map[] = new int[header.length];
+                for (int i = 0; i < header.length; i++) {
+                    map[i] = column(header[i].trim());
+                }
+
+                int r = base;
+                for (String line = br.readLine(); line != null; line = br.readLine()) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    String values[] = line.split(",");
+                    ensureCapacity(r + 1);
+                    for (int i = 0; i < values.length; i++) {
+                        if (map[i] >= 0) {
+                            columns[map[i]][r] = Double.parseDouble(values[i].trim());
+                        }
+                    }
+                    r++;
+                    size = Math.max(size, r);
+                }
+            }
+        }
+    }
+
+    public synchronized void loadSql(File file) throws Exception {
+
+        String prefix = "INSERT INTO `TrainingData` VALUES (";
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                if (line.startsWith(prefix)) {
+                    String values[] = line.substring(prefix.length(), line.lastIndexOf(')')).split(",");
+                    double row[] = new double[COLUMNS.length];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = Double.parseDouble(values[i].trim());
+                    }
+                    add(row);
+                }
+            }
+        }
+    }
+
+    /*
+     * A log that already holds rows replaces whatever was loaded; an empty one
+     * receives the current rows. Later appends go to both.
+     */
+    public synchronized void openLog(File file) throws Exception {
+
+        log = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        map(Math.max(log.size(), LOG_HEADER + (long) size * ROW_BYTES));
+
+        long rows = log.size() >= LOG_HEADER ? logBuffer.getLong(0) : 0;
+        if (rows > 0) {
+            size = 0;
+            double row[] = new double[COLUMNS.length];
+            for (long r = 0; r < rows; r++) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = logBuffer.getDouble((int) (LOG_HEADER + r * ROW_BYTES + i * 8));
+                }
+                add(row);
+            }
+        } else {
+            for (int r = 0; r < size; r++) {
+                writeLog(r);
+            }
+            logBuffer.putLong(0, size);
+        }
+    }
+
+    public synchronized void snapshot() {
+        if (logBuffer != null) {
+            logBuffer.force();
+        }
+    }
+
+    @Override
+    public synchronized Instances fetch(String[] query) throws Exception {
+
+        String selected[] = query[1].split(",");
+        int select[] = new int[selected.length + 2];
+        select[0] = 0;
+        select[1] = 1;
+        for (int i = 0; i < selected.length; i++) {
+            select[i + 2] = column(selected[i].trim());
+        }
+
+        ArrayList<Attribute> attInfo = new ArrayList<>();
+        for (int c : select) {
+            attInfo.add(new Attribute(COLUMNS[c]));
+        }
+
+        Instances dataSet = new Instances(query[0], attInfo, size);
+        for (int r = 0; r < size; r++) {
+            double values[] = new double[select.length];
+            for (int i = 0; i < select.length; i++) {
+                values[i] = columns[select[i]][r];
+            }
+            dataSet.add(new DenseInstance(1.0, values));
+        }
+
+        dataSet.setClassIndex(dataSet.numAttributes() - 1);
+
+        return dataSet;
+    }
+
+    @Override
+    public synchronized void append(double[] row) throws Exception {
+        add(row);
+        if (logBuffer != null) {
+            writeLog(size - 1);
+            logBuffer.putLong(0, size);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws Exception {
+        if (log != null) {
+            snapshot();
+            logBuffer = null;
+            log.close();
+            log = null;
+        }
+    }
+
+    private void add(double row[]) {
+        ensureCapacity(size + 1);
+        for (int i = 0; i < COLUMNS.length; i++) {
+            columns[i][size] = row[i];
+        }
+        size++;
+    }
+
+    private void writeLog(int r) throws Exception {
+        long offset = LOG_HEADER + (long) r * ROW_BYTES;
+        if (offset + ROW_BYTES > logBuffer.capacity()) {
+            map(offset + ROW_BYTES + LOG_CHUNK);
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            logBuffer.putDouble((int) offset + i * 8, columns[i][r]);
+        }
+    }
+
+    private void map(long capacity) throws Exception {
+        if (capacity > Integer.MAX_VALUE) {
+            throw new Exception("training log larger than 2GB");
+        }
+        logBuffer = log.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void ensureCapacity(int rows) {
+        if (rows > columns[0].length) {
+            int capacity = Math.max(rows, columns[0].length * 2);
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = Arrays.copyOf(columns[i], capacity);
+            }
+        }
+    }
+
+    private static int column(String name) {
+        if (name.equalsIgnoreCase("machines")) {
+            return 1;
+        }
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (COLUMNS[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
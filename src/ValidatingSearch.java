@@ -0,0 +1,28 @@
+/*
+ * Runs a strategy next to the exhaustive search and reports on stderr
+ * whenever they pick different machine counts.
+ */
+public class ValidatingSearch implements CandidateSearch {
+
+    private final CandidateSearch search;
+    private final CandidateSearch exhaustive = new ExhaustiveSearch();
+
+    public ValidatingSearch(CandidateSearch search) {
+        this.search = search;
+    }
+
+    @Override
+    public int search(Objective objective, int lo, int hi) throws Exception {
+
+        int found = search.search(objective, lo, hi);
+        int optimum = exhaustive.search(objective, lo, hi);
+
+        if (found != optimum) {
+            double scores[] = objective.evaluate(new int[]{found, optimum});
+            System.err.println(search.getClass().getSimpleName() + " chose " + found + " (" + scores[0] + "), exhaustive chose "
+                    + optimum + " (" + scores[1] + "), gap " + (scores[0] - scores[1]) / Math.abs(scores[1]));
+        }
+
+        return found;
+    }
+}
@@ -1,15 +1,13 @@
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.Statement;
+import java.io.File;
 import java.util.ArrayList;
-import weka.attributeSelection.ASEvaluation;
-import weka.attributeSelection.ASSearch;
-import weka.attributeSelection.AttributeSelection;
-import weka.classifiers.AbstractClassifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
@@ -20,127 +18,257 @@ public class WekaML {
 
     private final int numOfMachines;
     private final String features[][] = {{"rt", "ResponseTime"}, {"cpu", "CPUPower"}, {"ac", "ThresTemp, EnvTemp, ACPower"}};
-//    private final String header[] = {"WorkLoad", "NumOfMachines", "ResponseTime", "CPUPower", "CPUEnergy",
-//        "ThresTemp", "EnvTemp", "ACPower", "ACEnergy", "TotalEnergy"};
-    private final ArrayList<Double> testSet[];
+    private final String searchOptions[][] = {{"-D", "1", "-N", "10"}, {"-D", "1", "-N", "4"}, {"-D", "1", "-N", "7"}};
+    private final String evalOptions[][] = {{"-M", "-L"}, {}, {"-M"}};
+    private final String classifiers[][] = {
+        {"weka.classifiers.lazy.IBk", "-E", "-K", "6", "-X", "-I"},
+        {"weka.classifiers.meta.AdditiveRegression", "-S", "1", "-I", "13", "-W", "weka.classifiers.lazy.IBk", "--", "-E", "-K", "53", "-X", "-I"},
+        {"weka.classifiers.meta.AdditiveRegression", "-S", "1", "-I", "87", "-W", "weka.classifiers.trees.RandomForest", "--", "-I", "78", "-K", "2", "-depth", "0"}};
+    private final List<String> columns = Arrays.asList(TrainingDataSource.COLUMNS);
+    private final CandidateTable table; //the candidates being evaluated
+    private final CandidateTable scored; //every candidate of a decision, row m - 2 for m machines
     private final String method;
 
-    public WekaML(int numOfMachines, String method) {
+    private final int retrainRows = Integer.getInteger("wekaml.retrain.rows", 100);
+    private final double driftThreshold = Double.parseDouble(System.getProperty("wekaml.retrain.drift", "0.25"));
+    private final ExecutorService trainer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wekaml-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final TrainedModel models[] = new TrainedModel[features.length];
+    private final boolean knn = "knn".equals(System.getProperty("wekaml.backend"));
+
+    private static final int MIN_CHUNK = 64;
+    private final int parallelism = Integer.getInteger("wekaml.parallelism", Runtime.getRuntime().availableProcessors());
+    private final ForkJoinPool scorer = new ForkJoinPool(parallelism);
+    private final TrainingDataSource source;
+    private final int predicted[] = {CandidateTable.RT, CandidateTable.CPU_POWER, CandidateTable.AC_POWER}; //each model's column
+    private final CandidateSearch search;
+    private static final double EPTP[] = {0.75, 0.25}; //CPU and cooling energy weights
+    private final double weights[][] = parseWeights(System.getProperty("wekaml.weights"));
+
+    public WekaML(int numOfMachines, String method) throws Exception {
+        this(numOfMachines, method, defaultSource());
+    }
+
+    public WekaML(int numOfMachines, String method, TrainingDataSource source) throws Exception {
         this.numOfMachines = numOfMachines - 1;
-        testSet = new ArrayList[this.numOfMachines];
+        this.source = source;
+        search = CandidateSearch.forName(System.getProperty("wekaml.search", "exhaustive"));
         this.method = method;
-    }
+        table = new CandidateTable(this.numOfMachines);
+        scored = new CandidateTable(this.numOfMachines);
 
-    public ArrayList<Double> runWekaML(double workload) throws Exception {
+        for (int i = 0; i < features.length; i++) {
+            models[i] = new TrainedModel(searchOptions[i], evalOptions[i], classifiers[i], retrainRows, driftThreshold, trainer, knn);
+        }
+    }
 
-        for (int i = 0; i < testSet.length; i++) {
-            testSet[i] = new ArrayList<>();
-            testSet[i].add(workload);
-            testSet[i].add((i + 2) * 1.0);
+    private static TrainingDataSource defaultSource() throws Exception {
+        if ("memory".equals(System.getProperty("wekaml.source"))) {
+            String log = System.getProperty("wekaml.source.log");
+            return TrainingStore.open(new File(System.getProperty("wekaml.source.file", "trainingData.csv")), log == null ? null : new File(log));
         }
+        return new MySqlTrainingData();
+    }
 
-        predictResponseTime(fetchData(features[0]));
+    /*
+     * The chosen candidate's row, in CandidateTable.COLUMNS order.
+     */
+    public synchronized double[] runWekaML(double workload) throws Exception {
+        return Metrics.time("wekaml.predict", () -> decide(workload));
+    }
 
-        predictCPUPower(fetchData(features[1]));
-        calculateCPUEnergy();
+    private double[] decide(double workload) throws Exception {
 
-        Instances coolData = fetchData(features[2]);
+        train();
 
-        Instance recent = coolData.lastInstance();
-        for (ArrayList<Double> test : testSet) {
-            test.add(recent.value(2));
-            test.add(recent.value(3));
-        }
+        Arrays.fill(scored.m, 0); //0 machines: not evaluated yet
+        int evaluated[] = {0};
+
+        int best = search.search(machines -> {
+            int fresh[] = Arrays.stream(machines).filter(m -> scored.m[m - 2] == 0).distinct().toArray();
+            if (fresh.length > 0) {
+                evaluate(workload, fresh);
+                for (int i = 0; i < fresh.length; i++) {
+                    scored.copy(table, i, fresh[i] - 2);
+                }
+                evaluated[0] += fresh.length;
+            }
 
-        predictACPower(coolData);
-        calculateACEnergy();
+            double result[] = new double[machines.length];
+            for (int i = 0; i < machines.length; i++) {
+                result[i] = scored.score[machines[i] - 2];
+            }
+            return result;
+        }, 2, numOfMachines + 1);
+
+        Metrics.histogram("wekaml.candidates").record(evaluated[0]);
+        return scored.row(best - 2);
+    }
 
-        return calculateTotalEnergy();
+    /*
+     * The eptp optimum under each of weights, a CPU energy weight and a
+     * cooling energy weight each, from one set of predictions: every machine
+     * count is evaluated once and each weight vector picks from the Pareto
+     * front of the candidates.
+     */
+    public synchronized double[][] runWekaML(double workload, double weights[][]) throws Exception {
+        return Metrics.time("wekaml.predict", () -> decide(workload, weights));
     }
 
-    private void predictResponseTime(Instances instances) throws Exception {
+    private double[][] decide(double workload, double weights[][]) throws Exception {
 
-        Instances labeled = new Instances(instances);
+        train();
+
+        int machines[] = new int[numOfMachines];
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = i + 2;
+        }
+        evaluate(workload, machines);
+
+        int front[] = ParetoFront.of(table.cpuE, table.acE, table.rt);
+
+        double optima[][] = new double[weights.length][];
+        for (int k = 0; k < weights.length; k++) {
+            double min = Double.POSITIVE_INFINITY;
+            int chosen = -1;
+            for (int i : front) {
+                double score = eptp(table, i, weights[k]);
+                if (Double.isNaN(score)) {
+                    score = Double.POSITIVE_INFINITY; //never beats a scored candidate
+                }
+                if (chosen < 0 || score < min || score == min && machines[i] < machines[chosen]) {
+                    min = score;
+                    chosen = i;
+                }
+            }
+            optima[k] = table.row(chosen);
+        }
 
-        AttributeSelection as = new AttributeSelection();
-        ASSearch asSearch = ASSearch.forName("weka.attributeSelection.BestFirst", new String[]{"-D", "1", "-N", "10"});
-        as.setSearch(asSearch);
-        ASEvaluation asEval = ASEvaluation.forName("weka.attributeSelection.CfsSubsetEval", new String[]{"-M", "-L"});
-        as.setEvaluator(asEval);
-        as.SelectAttributes(instances);
-        instances = as.reduceDimensionality(instances);
-        Classifier classifier = AbstractClassifier.forName("weka.classifiers.lazy.IBk", new String[]{"-E", "-K", "6", "-X", "-I"});
-        classifier.buildClassifier(instances);
+        Metrics.histogram("wekaml.candidates").record(machines.length);
+        Metrics.histogram("wekaml.front").record(front.length);
+        return optima;
+    }
 
-        predictLabel(labeled, classifier);
+    /*
+     * The weight vectors wekaml.weights lists, such as 0.75:0.25,0.5:0.5, or
+     * null if it is not set.
+     */
+    double[][] getWeights() {
+        return weights;
     }
 
-    private void predictCPUPower(Instances instances) throws Exception {
+    static double[][] parseWeights(String spec) {
+        if (spec == null || spec.trim().isEmpty()) {
+            return null;
+        }
+        String vectors[] = spec.split(",");
+        double weights[][] = new double[vectors.length][];
+        for (int k = 0; k < vectors.length; k++) {
+            String parts[] = vectors[k].trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("weight vector " + vectors[k] + " is not CPU:cooling");
+            }
+            weights[k] = new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+            for (double weight : weights[k]) {
+                if (!(weight >= 0) || Double.isInfinite(weight)) {
+                    throw new IllegalArgumentException("weight vector " + vectors[k] + " needs finite non-negative weights");
+                }
+            }
+        }
+        return weights;
+    }
 
-        Instances labeled = new Instances(instances);
+    /*
+     * Trains models on first use and otherwise swaps in finished rebuilds.
+     */
+    void train() throws Exception {
 
-        AttributeSelection as = new AttributeSelection();
-        ASSearch asSearch = ASSearch.forName("weka.attributeSelection.BestFirst", new String[]{"-D", "1", "-N", "4"});
-        as.setSearch(asSearch);
-        ASEvaluation asEval = ASEvaluation.forName("weka.attributeSelection.CfsSubsetEval", new String[]{});
-        as.setEvaluator(asEval);
-        as.SelectAttributes(instances);
-        instances = as.reduceDimensionality(instances);
-        Classifier classifier = AbstractClassifier.forName("weka.classifiers.meta.AdditiveRegression", new String[]{"-S", "1", "-I", "13", "-W", "weka.classifiers.lazy.IBk", "--", "-E", "-K", "53", "-X", "-I"});
-        classifier.buildClassifier(instances);
+        for (int i = 0; i < features.length; i++) {
+            if (models[i].isTrained()) {
+                models[i].refresh();
+            } else {
+                models[i].train(fetchData(features[i]));
+            }
+        }
 
-        predictLabel(labeled, classifier);
+        for (TrainedModel model : models) {
+            model.releaseCopies();
+        }
     }
 
-    private void predictACPower(Instances instances) throws Exception {
-
-        Instances labeled = new Instances(instances);
+    /*
+     * Rebuilds every model from all of the history now, whether or not its
+     * learner could have taken the new rows one by one.
+     */
+    void retrain() throws Exception {
 
-        AttributeSelection as = new AttributeSelection();
-        ASSearch asSearch = ASSearch.forName("weka.attributeSelection.BestFirst", new String[]{"-D", "1", "-N", "7"});
-        as.setSearch(asSearch);
-        ASEvaluation asEval = ASEvaluation.forName("weka.attributeSelection.CfsSubsetEval", new String[]{"-M"});
-        as.setEvaluator(asEval);
-        as.SelectAttributes(instances);
-        instances = as.reduceDimensionality(instances);
-        Classifier classifier = AbstractClassifier.forName("weka.classifiers.meta.AdditiveRegression", new String[]{"-S", "1", "-I", "87", "-W", "weka.classifiers.trees.RandomForest", "--", "-I", "78", "-K", "2", "-depth", "0"});
-        classifier.buildClassifier(instances);
+        for (int i = 0; i < features.length; i++) {
+            models[i].retrain(fetchData(features[i]));
+        }
 
-        predictLabel(labeled, classifier);
+        for (TrainedModel model : models) {
+            model.releaseCopies();
+        }
     }
 
-    private Instances fetchData(String[] query) throws Exception {
+    /*
+     * Fills the table for one candidate per machine count and returns its
+     * score column, valid up to machines.length and overwritten by the next
+     * call.
+     */
+    double[] evaluate(double workload, int machines[]) throws Exception {
 
-        try (Connection con = DriverManager.getConnection("jdbc:mysql://localhost/simgrid", "root", ""); Statement st = con.createStatement()) {
+        table.reset(workload, machines);
 
-            ResultSet rs = st.executeQuery("SELECT WorkLoad, NumOfMachines, " + query[1] + " FROM TrainingData");
-            ResultSetMetaData md = rs.getMetaData();
-            int columnCount = md.getColumnCount();
+        predictResponseTime(table, models[0]);
 
-            ArrayList<Attribute> attInfo = new ArrayList<>();
-            for (int i = 1; i <= columnCount; i++) {
-                attInfo.add(new Attribute(md.getColumnName(i)));
-            }
+        predictCPUPower(table, models[1]);
+        calculateCPUEnergy(table);
 
-            Instances dataSet = new Instances(query[0], attInfo, columnCount);
-            while (rs.next()) {
-                Instance inst = new DenseInstance(columnCount);
-                for (int i = 1; i <= columnCount; i++) {
-                    inst.setValue(i - 1, rs.getDouble(i));
-                }
-                dataSet.add(inst);
-            }
+        Instances coolData = models[2].getData();
 
-            if (dataSet.classIndex() == -1) {
-                dataSet.setClassIndex(dataSet.numAttributes() - 1);
-            }
+        Instance recent = coolData.lastInstance();
+        Arrays.fill(table.thres, 0, table.size(), recent.value(2));
+        Arrays.fill(table.env, 0, table.size(), recent.value(3));
 
-            return dataSet;
-        }
+        predictACPower(table, models[2]);
+        calculateACEnergy(table);
+
+        return calculateTotalEnergy(table);
+    }
+
+    CandidateTable getTable() {
+        return table;
+    }
+
+    TrainedModel getModel(int k) {
+        return models[k];
+    }
+
+    private void predictResponseTime(CandidateTable table, TrainedModel model) throws Exception {
+        predictLabel(table, model.getData(), model, CandidateTable.RT);
+    }
+
+    private void predictCPUPower(CandidateTable table, TrainedModel model) throws Exception {
+        predictLabel(table, model.getData(), model, CandidateTable.CPU_POWER);
+    }
 
+    private void predictACPower(CandidateTable table, TrainedModel model) throws Exception {
+        predictLabel(table, model.getData(), model, CandidateTable.AC_POWER);
     }
 
-    private Instances generateTestSet(Instances instances) {
+    private Instances fetchData(String[] query) throws Exception {
+        return Metrics.time("wekaml.fetch", () -> {
+            Instances data = source.fetch(query);
+            Metrics.counter("wekaml.rows.fetched").add(data.numInstances());
+            return data;
+        });
+    }
+
+    Instances generateTestSet(CandidateTable table, Instances instances) {
 
         int columnCount = instances.numAttributes();
 
@@ -149,18 +277,13 @@ public class WekaML {
             attInfo.add(instances.attribute(i));
         }
 
+        double columns[][] = columnsOf(table, instances, columnCount - 1);
         Instances dataSet = new Instances("test", attInfo, columnCount);
-        for (int i = 0; i < numOfMachines; i++) {
+        for (int i = 0; i < table.size(); i++) {
             Instance inst = new DenseInstance(columnCount);
 
-            inst.setValue(0, testSet[i].get(0));
-            inst.setValue(1, testSet[i].get(1));
-
-            if (columnCount > 3) {
-                int size = testSet[i].size();
-
-                inst.setValue(2, testSet[i].get(size - 2));
-                inst.setValue(3, testSet[i].get(size - 1));
+            for (int a = 0; a < columnCount - 1; a++) {
+                inst.setValue(a, columns[a][i]);
             }
 
             inst.setValue(columnCount - 1, 0);
@@ -175,91 +298,168 @@ public class WekaML {
         return dataSet;
     }
 
-    private void predictLabel(Instances labeled, Classifier classifier) throws Exception {
+    /*
+     * The table columns holding the first count attributes of a model's
+     * data, by attribute name.
+     */
+    private static double[][] columnsOf(CandidateTable table, Instances instances, int count) {
+        double columns[][] = new double[count][];
+        for (int a = 0; a < count; a++) {
+            columns[a] = table.column(CandidateTable.indexOf(instances.attribute(a).name()));
+        }
+        return columns;
+    }
+
+    /*
+     * Predicts the model's label for every candidate into the table's column.
+     */
+    void predictLabel(CandidateTable table, Instances labeled, TrainedModel model, int column) throws Exception {
+        Metrics.time("wekaml.predictLabel", () -> classifyAll(table, labeled, model, table.column(column)));
+    }
+
+    private void classifyAll(CandidateTable table, Instances labeled, TrainedModel model, double labels[]) throws Exception {
 
-        Instances unlabeled = generateTestSet(labeled);
+        if (model.getRegressor() != null) {
+            regress(table, labeled, model, labels);
+            return;
+        }
 
-        for (int i = 0; i < unlabeled.numInstances(); i++) {
-            double clsLabel = classifier.classifyInstance(unlabeled.instance(i));
-            testSet[i].add(clsLabel);
+        Instances unlabeled = model.reduce(generateTestSet(table, labeled));
+
+        int n = unlabeled.numInstances();
+        int chunks = Math.max(1, Math.min(parallelism, n / MIN_CHUNK));
+        Classifier classifiers[] = model.getClassifiers(chunks);
+
+        if (chunks == 1) {
+            classify(classifiers[0], unlabeled, labels, 0, n);
+        } else {
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            for (int c = 0; c < chunks; c++) {
+                Classifier classifier = classifiers[c];
+                int from = (int) ((long) n * c / chunks), to = (int) ((long) n * (c + 1) / chunks);
+                tasks.add(() -> {
+                    classify(classifier, unlabeled, labels, from, to);
+                    return null;
+                });
+            }
+            for (Future<Void> task : scorer.invokeAll(tasks)) {
+                task.get();
+            }
         }
     }
 
-    private void calculateCPUEnergy() {
+    /*
+     * The kNN backend: the model's features straight from the table's
+     * columns, predicted in one batch.
+     */
+    private void regress(CandidateTable table, Instances labeled, TrainedModel model, double labels[]) throws Exception {
+
+        int selected[] = model.getSelected();
+        double columns[][] = new double[selected.length - 1][];
+        for (int a = 0; a < columns.length; a++) {
+            columns[a] = table.column(CandidateTable.indexOf(labeled.attribute(selected[a]).name()));
+        }
+
+        model.getRegressor().predict(columns, table.size(), labels);
+    }
 
-        for (ArrayList<Double> test : testSet) {
-            test.add(test.get(3) * test.get(2));
+    private static void classify(Classifier classifier, Instances unlabeled, double labels[], int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            labels[i] = classifier.classifyInstance(unlabeled.instance(i));
         }
     }
 
-    private void calculateACEnergy() {
+    private void calculateCPUEnergy(CandidateTable table) {
 
-        for (ArrayList<Double> test : testSet) {
-            test.add(test.get(7) * test.get(2));
+        for (int i = 0; i < table.size(); i++) {
+            table.cpuE[i] = table.cpuP[i] * table.rt[i];
         }
     }
 
-    private ArrayList<Double> calculateTotalEnergy() {
+    private void calculateACEnergy(CandidateTable table) {
+
+        for (int i = 0; i < table.size(); i++) {
+            table.acE[i] = table.acP[i] * table.rt[i];
+        }
+    }
 
-        ArrayList<Double> optimumConfig = new ArrayList<>();
+    double[] calculateTotalEnergy(CandidateTable table) {
 
-        double minEnergy = Double.MAX_VALUE, energy;
+        double energy;
 
-        for (ArrayList<Double> test : testSet) {
+        for (int i = 0; i < table.size(); i++) {
 
-            energy = test.get(4) + test.get(8);
-            test.add(energy);
+            energy = table.cpuE[i] + table.acE[i];
+            table.total[i] = energy;
 
             switch (method) {
                 case "cpu":
-                    energy = test.get(4);
+                    energy = table.cpuE[i];
                     break;
                 case "cool":
-                    energy = test.get(8);
+                    energy = table.acE[i];
                     break;
                 case "eptp":
-                    energy = (0.75 * test.get(4) + 0.25 * test.get(8)) / (test.get(0) / test.get(2));
+                    energy = eptp(table, i, EPTP);
                     break;
             }
 
-            if (energy < minEnergy) {
-                minEnergy = energy;
-                optimumConfig = test;
-            }
-
+            table.score[i] = energy;
         }
 
-        return optimumConfig;
+        return table.score;
     }
 
-    public void updateHistory(String data, double thresTemp, double envTemp) throws Exception {
+    /*
+     * Weighted energy per unit of throughput.
+     */
+    private static double eptp(CandidateTable table, int i, double weight[]) {
+        return (weight[0] * table.cpuE[i] + weight[1] * table.acE[i]) / (table.w[i] / table.rt[i]);
+    }
 
-        try (Connection con = DriverManager.getConnection("jdbc:mysql://localhost/simgrid", "root", "")) {
+    public synchronized void updateHistory(String data, double thresTemp, double envTemp) throws Exception {
+        updateHistory(SimulationResult.parse(data), thresTemp, envTemp);
+    }
 
-            String sqlInsert = "INSERT INTO `TrainingData` VALUES (?, ?, ?, ?, ?, ?, ?)";
-            String[] output = data.split(",");
+    public synchronized void updateHistory(SimulationResult result, double thresTemp, double envTemp) throws Exception {
+        updateHistory(result, thresTemp, envTemp, null);
+    }
 
-            try (PreparedStatement ps = con.prepareStatement(sqlInsert)) {
+    /*
+     * chosen is the row of the decision that result ran, as runWekaML
+     * returned it, or null if no decision picked it. Only the models'
+     * predictions for the chosen machine count count towards drift.
+     */
+    public synchronized void updateHistory(SimulationResult result, double thresTemp, double envTemp, double chosen[]) throws Exception {
+        Metrics.time("wekaml.update", () -> addHistory(result, thresTemp, envTemp, chosen));
+    }
 
-                double m = Double.valueOf(output[1]);
-                double time = Double.valueOf(output[4]);
-                double cpu = Double.valueOf(output[2]) / time + (numOfMachines - m) * 5;
-                double ac = Double.valueOf(output[3]) / time + (numOfMachines - m) * 1;
+    private void addHistory(SimulationResult result, double thresTemp, double envTemp, double chosen[]) throws Exception {
 
-                ps.setDouble(1, Double.valueOf(output[0])); //workload
-                ps.setDouble(2, m); //numofmachines
-                ps.setDouble(3, time); //responsetime
-                ps.setDouble(4, cpu); //cpupower
-                ps.setDouble(5, thresTemp);
-                ps.setDouble(6, envTemp);
-                ps.setDouble(7, ac); //acpower
+        double m = result.getMachines();
+        double row[] = result.toTrainingRow(numOfMachines, thresTemp, envTemp);
 
-                ps.execute();
+        source.append(row);
 
+        for (int k = 0; k < models.length; k++) {
+            if (models[k].isTrained()) {
+                Instances header = models[k].getData();
+                double values[] = new double[header.numAttributes()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = row[columns.indexOf(header.attribute(i).name())];
+                }
+                boolean picked = chosen != null && chosen[CandidateTable.MACHINES] == m;
+                models[k].add(new DenseInstance(1.0, values), picked ? chosen[predicted[k]] : Double.NaN);
             }
         }
     }
 
+    public void close() throws Exception {
+        trainer.shutdownNow();
+        scorer.shutdown();
+        source.close();
+    }
+
 //    public static void main(String[] args) throws Exception {
 //        new WekaML(210, true).runWekaML(12800);
 //    }